@@ -17,8 +17,10 @@ package org.machinemc.api.entities;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Unmodifiable;
 import org.machinemc.api.server.ServerProperty;
+import org.machinemc.api.world.Location;
 import org.machinemc.api.world.World;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -79,6 +81,31 @@ public interface EntityManager extends ServerProperty {
      */
     @Unmodifiable Set<Entity> getEntities(Predicate<Entity> predicate);
 
+    /**
+     * Returns entities within given distance from a location.
+     * @param center center of the range
+     * @param range maximal distance from the center
+     * @return entities in the range
+     */
+    @Unmodifiable Set<Entity> getEntitiesInRange(Location center, double range);
+
+    /**
+     * Returns entities within a box between two corners, both corners
+     * have to be in the same world.
+     * @param from first corner of the box
+     * @param to opposite corner of the box
+     * @return entities in the box
+     */
+    @Unmodifiable Set<Entity> getEntitiesInBox(Location from, Location to);
+
+    /**
+     * Returns entities nearest to a location, sorted by their distance.
+     * @param center center location
+     * @param count maximal number of returned entities
+     * @return nearest entities
+     */
+    @Unmodifiable List<Entity> getNearestEntities(Location center, int count);
+
     /**
      * Searches for entity with given uuid.
      * @param uuid uuid of the entity
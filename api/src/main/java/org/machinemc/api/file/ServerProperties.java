@@ -81,6 +81,76 @@ public interface ServerProperties extends ServerFile, ServerProperty {
      */
     int getSimulationDistance();
 
+    /**
+     * @return whether the native transport should be used for the connection if it's available
+     */
+    boolean isNativeTransport();
+
+    /**
+     * @return number of threads handling the client connections, 0 for the default number
+     */
+    int getNetworkThreads();
+
+    /**
+     * @return whether the packets sent to the players are flushed once per tick instead of after each packet
+     */
+    boolean isTickFlush();
+
+    /**
+     * @return number of pending bytes after which the packets are flushed before the end of the tick,
+     * 0 or less to flush only at the end of the tick
+     */
+    int getFlushThreshold();
+
+    /**
+     * @return size of packets in bytes from which they are compressed, 0 if all packets are compressed,
+     * -1 if the compression is disabled
+     */
+    int getCompressionThreshold();
+
+    /**
+     * @return zlib compression level used for compressed packets (0-9), -1 for the default level
+     */
+    @Range(from = -1, to = 9) int getCompressionLevel();
+
+    /**
+     * @return maximum number of chunks sent to a single player each tick
+     */
+    int getChunksPerTick();
+
+    /**
+     * @return number of threads running the packet translators that are offloaded
+     * from the network threads, 0 to run them on virtual threads
+     */
+    int getTranslatorThreads();
+
+    /**
+     * @return whether the worlds are saved automatically
+     */
+    boolean isAutoSave();
+
+    /**
+     * @return interval in seconds after which a changed region of a world is saved
+     */
+    int getAutoSaveInterval();
+
+    /**
+     * @return maximum amount of data in MB written by the auto save each second,
+     * 0 or less for no limit
+     */
+    int getAutoSaveThroughput();
+
+    /**
+     * @return whether generated chunks that have not been changed yet are saved
+     */
+    boolean isSaveGeneratedChunks();
+
+    /**
+     * @return number of changed segments of a region after which the region is saved
+     * immediately, 0 or less to save the regions only in the auto save interval
+     */
+    int getAutoSaveLimit();
+
     /**
      * @return tps defined in the server's properties
      */
@@ -74,6 +74,13 @@ public interface ServerConnection extends ServerProperty {
      */
     void broadcastPacket(Packet packet, Predicate<PlayerConnection> predicate);
 
+    /**
+     * Sends a packet to multiple clients.
+     * @param packet packet to send
+     * @param targets connections to send the packet to
+     */
+    void broadcastPacket(Packet packet, Iterable<? extends PlayerConnection> targets);
+
     /**
      * Disconnects a player connection from the server.
      * @param connection connection to disconnect
@@ -17,6 +17,8 @@ package org.machinemc.api.network.packets;
 import lombok.Getter;
 import org.jetbrains.annotations.Range;
 import org.jetbrains.annotations.Unmodifiable;
+import org.machinemc.api.utils.ServerBuffer;
+import org.machinemc.api.utils.Writable;
 
 import java.util.Optional;
 import java.util.Set;
@@ -24,7 +26,7 @@ import java.util.Set;
 /**
  * Represents a server packet.
  */
-public interface Packet extends Cloneable {
+public interface Packet extends Cloneable, Writable {
 
     /**
      * @return mapped id of the packet
@@ -42,6 +44,13 @@ public interface Packet extends Cloneable {
      */
     byte[] serialize();
 
+    /**
+     * Writes the packet data to the buffer, doesn't contain packet size and id.
+     * @param buf buffer to write into
+     */
+    @Override
+    void write(ServerBuffer buf);
+
     /**
      * Serializes the full packet including size and id.
      * @return serialized packet
@@ -83,7 +92,7 @@ public interface Packet extends Cloneable {
          */
         public static Optional<PacketState> fromMask(final @Range(from = 0, to = 0b111) int mask) {
             for (final PacketState state : values()) {
-                if (state.mask == mask) return Optional.of(state);
+                if (state.mask >> OFFSET == mask) return Optional.of(state);
             }
             return Optional.empty();
         }
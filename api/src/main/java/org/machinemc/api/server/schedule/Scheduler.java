@@ -21,6 +21,8 @@ import org.jetbrains.annotations.*;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Scheduler, can schedule tasks on a thread.
@@ -30,6 +32,11 @@ import java.util.concurrent.*;
  * scheduler instance from different threads. To unblock the
  * thread {@link Scheduler#shutdown()} should be used, scheduler can
  * be then run again on the same or a different thread.
+ * <p>
+ * Async tasks are run on a fixed size thread pool, tasks that block
+ * (e.g. on network or disk I/O) should be run on virtual threads instead
+ * using {@link TaskBuilder#virtual()}, the thread pool then only
+ * times their execution.
  * @see Scheduler#task(TaskRunnable)
  * @see TaskBuilder#run(Scheduler)
  */
@@ -38,12 +45,16 @@ public class Scheduler {
     @Getter(AccessLevel.PROTECTED)
     private final BlockingQueue<TaskSession> syncQueue;
     @Getter
-    private final ScheduledExecutorService threadPoolExecutor;
+    private final ScheduledThreadPoolExecutor threadPoolExecutor;
+    private final ExecutorService virtualExecutor;
+
+    private final AtomicInteger activeVirtualTasks = new AtomicInteger();
+    private final LongAdder completedVirtualTasks = new LongAdder();
 
     protected final HashSet<TaskSession> sessions = new HashSet<>();
 
     @Getter
-    private boolean running = false;
+    protected volatile boolean running = false;
 
     /**
      * Creates scheduler for the current thread.
@@ -51,7 +62,8 @@ public class Scheduler {
      */
     public Scheduler(final int threadPoolSize) {
         syncQueue = new LinkedBlockingQueue<>();
-        threadPoolExecutor = Executors.newScheduledThreadPool(threadPoolSize, Executors.defaultThreadFactory());
+        threadPoolExecutor = new ScheduledThreadPoolExecutor(threadPoolSize, Executors.defaultThreadFactory());
+        virtualExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Scheduler-virtual-", 0).factory());
     }
 
     /**
@@ -64,11 +76,37 @@ public class Scheduler {
     public void run() throws InterruptedException {
         running = true;
         sessions.clear();
-        while (!Thread.interrupted() && running) {
-            final TaskSession next = syncQueue.take();
-            if (running && next.wrapped != null)
-                next.wrapped.run(next.input, next);
+        while (!Thread.interrupted() && running)
+            runSyncTask(syncQueue.take());
+    }
+
+    /**
+     * Runs all sync tasks that are waiting in the queue at the time of
+     * the call on the current thread without blocking it.
+     * <p>
+     * Tasks that are queued while the method is running are left
+     * for the next call.
+     * @return number of executed tasks
+     */
+    @NonBlocking
+    protected int runSyncTasks() {
+        final int queued = syncQueue.size();
+        int executed = 0;
+        TaskSession next;
+        while (running && executed < queued && (next = syncQueue.poll()) != null) {
+            runSyncTask(next);
+            executed++;
         }
+        return executed;
+    }
+
+    /**
+     * Runs a single sync task on the current thread.
+     * @param session session of the task
+     */
+    private void runSyncTask(final TaskSession session) {
+        if (running && session.wrapped != null)
+            session.wrapped.run(session.input, session);
     }
 
     /**
@@ -85,6 +123,68 @@ public class Scheduler {
             session.terminate();
     }
 
+    /**
+     * Runs the task on a new virtual thread.
+     * @param task task to run
+     * @return future of the task
+     */
+    Future<?> submitVirtual(final Runnable task) {
+        activeVirtualTasks.incrementAndGet();
+        return virtualExecutor.submit(() -> {
+            try {
+                task.run();
+            } finally {
+                activeVirtualTasks.decrementAndGet();
+                completedVirtualTasks.increment();
+            }
+        });
+    }
+
+    /**
+     * @return number of threads of the scheduler's thread pool
+     */
+    public int getPoolSize() {
+        return threadPoolExecutor.getCorePoolSize();
+    }
+
+    /**
+     * @return number of threads of the thread pool that are currently executing a task
+     */
+    public int getActiveThreads() {
+        return threadPoolExecutor.getActiveCount();
+    }
+
+    /**
+     * @return number of tasks waiting for execution in the thread pool, including
+     * the delayed and repeating tasks waiting for their next execution
+     */
+    public int getQueuedTasks() {
+        return threadPoolExecutor.getQueue().size();
+    }
+
+    /**
+     * Returns saturation of the thread pool, if the value is close to 1 all
+     * threads of the pool are busy and new async tasks are delayed.
+     * @return ratio of the busy threads of the thread pool
+     */
+    public double getPoolSaturation() {
+        return threadPoolExecutor.getActiveCount() / (double) threadPoolExecutor.getCorePoolSize();
+    }
+
+    /**
+     * @return number of tasks currently running on virtual threads
+     */
+    public int getActiveVirtualTasks() {
+        return activeVirtualTasks.get();
+    }
+
+    /**
+     * @return number of tasks that finished running on virtual threads
+     */
+    public long getCompletedVirtualTasks() {
+        return completedVirtualTasks.sum();
+    }
+
     /**
      * Creates new task builder for the provided task.
      * @param task task
@@ -100,6 +200,8 @@ public class Scheduler {
     public String toString() {
         return "Scheduler("
                 + "running=" + running
+                + ", saturation=" + getPoolSaturation()
+                + ", virtualTasks=" + getActiveVirtualTasks()
                 + ')';
     }
 
@@ -134,6 +236,16 @@ public class Scheduler {
             return execution(TaskSession.Execution.ASYNC);
         }
 
+        /**
+         * Makes the task run asynchronously on a virtual thread, should
+         * be used for tasks that block.
+         * @return task builder
+         */
+        @Contract("-> this")
+        public TaskBuilder virtual() {
+            return execution(TaskSession.Execution.VIRTUAL);
+        }
+
         /**
          * Changes the execution of the task.
          * @param execution execution
@@ -19,6 +19,8 @@ import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -49,6 +51,8 @@ public class TaskSession {
     protected @Nullable TaskRunnable<?> wrapped;
 
     private ScheduledFuture<?> asyncScheduledFuture;
+    private volatile @Nullable Future<?> virtualFuture;
+    private volatile boolean cancelled = false;
 
     /**
      * Runs the task.
@@ -102,9 +106,51 @@ public class TaskSession {
                 };
             }
             wrapped.run(input, this);
+        } else if (execution == Execution.VIRTUAL) {
+            if (!repeating) {
+                wrapped = (i, session) -> {
+                    asyncScheduledFuture = scheduler.getThreadPoolExecutor().schedule(() -> runVirtual(() -> {
+                        output.set(runnable.run(i, session));
+                        runFuture();
+                    }), delay, unit);
+                    return null;
+                };
+            } else {
+                wrapped = (i, session) -> {
+                    scheduleVirtual(() -> output.set(runnable.run(i, session)),
+                            System.nanoTime() + unit.toNanos(delay));
+                    return null;
+                };
+            }
+            wrapped.run(input, this);
         }
     }
 
+    /**
+     * Schedules next repetition of a repeating task run on virtual threads.
+     * <p>
+     * The next repetition is scheduled only after the previous one finishes, so
+     * the repetitions never overlap, same as with {@link ScheduledExecutorService#scheduleAtFixedRate}.
+     * @param task task to repeat
+     * @param time time of the next repetition in nanoseconds
+     */
+    private void scheduleVirtual(final Runnable task, final long time) {
+        if (cancelled) return;
+        asyncScheduledFuture = scheduler.getThreadPoolExecutor().schedule(() -> runVirtual(() -> {
+            task.run();
+            scheduleVirtual(task, time + unit.toNanos(period));
+        }), time - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Hands the task off from the timer thread to a virtual thread.
+     * @param task task to run
+     */
+    private void runVirtual(final Runnable task) {
+        if (cancelled) return;
+        virtualFuture = scheduler.submitVirtual(task);
+    }
+
     /**
      * Runs the next task in the order.
      */
@@ -132,7 +178,10 @@ public class TaskSession {
         if (!running)
             throw new IllegalStateException("You can't stop not running task");
         if (asyncScheduledFuture != null) {
+            cancelled = true;
             asyncScheduledFuture.cancel(interrupt);
+            final Future<?> virtualFuture = this.virtualFuture;
+            if (virtualFuture != null) virtualFuture.cancel(interrupt);
             if (next) runFuture();
         }
     }
@@ -141,8 +190,11 @@ public class TaskSession {
      * Terminates the task.
      */
     protected void terminate() {
+        cancelled = true;
         if (asyncScheduledFuture != null)
             asyncScheduledFuture.cancel(true);
+        final Future<?> virtualFuture = this.virtualFuture;
+        if (virtualFuture != null) virtualFuture.cancel(true);
     }
 
     @Override
@@ -157,7 +209,8 @@ public class TaskSession {
      */
     public enum Execution {
         SYNC,
-        ASYNC
+        ASYNC,
+        VIRTUAL
     }
 
 }
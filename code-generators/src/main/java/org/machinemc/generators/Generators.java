@@ -19,6 +19,7 @@ import lombok.RequiredArgsConstructor;
 import org.apache.tools.ant.filters.StringInputStream;
 import org.machinemc.generators.blockdata.BlockDataLibGenerator;
 import org.machinemc.generators.materials.MaterialsLibGenerator;
+import org.machinemc.generators.packets.PacketIndexGenerator;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -85,18 +86,29 @@ public final class Generators {
         handle(new MaterialsLibGenerator(outputDir), regenerate);
         handle(new BlockDataLibGenerator(outputDir), regenerate);
 
+        final PacketIndexGenerator packetIndex = new PacketIndexGenerator(outputDir,
+                new File(projectDir, "src/main/java"));
+        if (packetIndex.scan())
+            handle(packetIndex, packetIndex.getVersion(), regenerate);
+
         Files.copy(new StringInputStream(gson.toJson(userVersions)),
                 versionsFile.toPath(),
                 StandardCopyOption.REPLACE_EXISTING);
     }
 
     private void handle(final CodeGenerator generator, final boolean regenerate) throws Throwable {
+        handle(generator, versions.get(generator.getLibraryName()).getAsString(), regenerate);
+    }
+
+    private void handle(final CodeGenerator generator,
+                        final String version,
+                        final boolean regenerate) throws Throwable {
         if (!generator.getJar().exists()) {
             generator.load();
             generator.generate();
+            userVersions.addProperty(generator.getLibraryName(), version);
             return;
         }
-        final String version = versions.get(generator.getLibraryName()).getAsString();
         final JsonElement element = userVersions.get(generator.getLibraryName());
         final String userVersion = element != null ? element.getAsString() : null;
         if (!version.equals(userVersion) || regenerate) {
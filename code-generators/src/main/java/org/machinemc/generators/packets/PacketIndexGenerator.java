@@ -0,0 +1,264 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.generators.packets;
+
+import org.machinemc.generators.CodeGenerator;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Generates index of all server packets and packet translators, so the server
+ * does not have to scan its own jar for them during the startup.
+ * <p>
+ * Packets are all non-abstract classes extending {@code PacketIn} or {@code PacketOut},
+ * translators all non-abstract classes extending {@code PacketTranslator}, directly
+ * or through other classes. Indexed classes that can not be loaded from the index
+ * fail the generation instead of being left out.
+ */
+public class PacketIndexGenerator extends CodeGenerator {
+
+    public static final String INDEX_CLASS = "org.machinemc.server.network.packets.PacketIndex";
+    public static final String PACKETS_PACKAGE = "org.machinemc.server.network.packets";
+    public static final String TRANSLATORS_PACKAGE = "org.machinemc.server.translation.translators";
+    public static final String TRANSLATOR_CLASS = "org.machinemc.server.translation.PacketTranslator";
+
+    private static final Set<String> PACKET_BASES = Set.of("PacketIn", "PacketOut");
+    private static final Set<String> TRANSLATOR_BASES = Set.of("PacketTranslator");
+
+    private static final Pattern CLASS_PATTERN = Pattern.compile(
+            "((?:\\b(?:public|protected|private|abstract|final|static|sealed|non-sealed|strictfp)\\s+)*)"
+                    + "class\\s+(\\w+)(?:\\s*<[^{]*?>)?\\s+extends\\s+(\\w+)");
+    private static final Pattern DIRECT_SUBCLASS_PATTERN =
+            Pattern.compile("\\bclass\\s+\\w+[^{;]*?\\bextends\\s+(?:PacketIn|PacketOut|PacketTranslator)\\b");
+
+    private final File sourceDir;
+    private final Set<String> packets = new TreeSet<>();
+    private final Set<String> translators = new TreeSet<>();
+
+    public PacketIndexGenerator(final File outputDir, final File sourceDir) {
+        super(outputDir, "packets");
+        this.sourceDir = sourceDir;
+    }
+
+    /**
+     * Collects the packet and translator classes from the source directory.
+     * @return whether the source directory contains the server packets
+     * @throws IOException if reading of the sources failed
+     * @throws IllegalStateException if a packet or translator can not be indexed
+     */
+    public boolean scan() throws IOException {
+        packets.clear();
+        translators.clear();
+        if (!Files.isDirectory(packageDir(PACKETS_PACKAGE))) return false;
+        scan(PACKETS_PACKAGE, PACKET_BASES, packets);
+        scan(TRANSLATORS_PACKAGE, TRANSLATOR_BASES, translators);
+        if (packets.isEmpty())
+            throw new IllegalStateException("No packets have been found in " + PACKETS_PACKAGE);
+        return true;
+    }
+
+    /**
+     * Version of the index, changes each time a packet or translator
+     * is added or removed.
+     * @return version of the index
+     */
+    public String getVersion() {
+        return Integer.toHexString(31 * packets.hashCode() + translators.hashCode());
+    }
+
+    @Override
+    public void generate() throws IOException {
+        System.out.println("Generating the " + super.getLibraryName() + " library");
+        System.out.println("Loaded " + packets.size() + " packets and " + translators.size() + " translators");
+
+        final ClassWriter cw = createWriter();
+        cw.visit(Opcodes.V17,
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+                type(INDEX_CLASS).getInternalName(),
+                null,
+                Type.getInternalName(Object.class),
+                new String[0]);
+
+        CodeGenerator.visitGeneratedAnnotation(cw, PacketIndexGenerator.class);
+
+        // Constructor
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PRIVATE,
+                CONSTRUCTOR_NAME,
+                "()V",
+                null,
+                new String[0]);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL,
+                Type.getInternalName(Object.class),
+                CONSTRUCTOR_NAME,
+                "()V",
+                false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // Packet classes
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+                "packets",
+                "()" + array(Type.getType(Class.class)).getDescriptor(),
+                null,
+                new String[0]);
+        mv.visitCode();
+        pushValue(mv, packets.size());
+        mv.visitTypeInsn(Opcodes.ANEWARRAY, Type.getInternalName(Class.class));
+        int i = 0;
+        for (final String packet : packets) {
+            mv.visitInsn(Opcodes.DUP);
+            pushValue(mv, i++);
+            mv.visitLdcInsn(type(packet));
+            mv.visitInsn(Opcodes.AASTORE);
+        }
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // Translator instances
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+                "translators",
+                "()" + array(type(TRANSLATOR_CLASS)).getDescriptor(),
+                null,
+                new String[0]);
+        mv.visitCode();
+        pushValue(mv, translators.size());
+        mv.visitTypeInsn(Opcodes.ANEWARRAY, type(TRANSLATOR_CLASS).getInternalName());
+        i = 0;
+        for (final String translator : translators) {
+            mv.visitInsn(Opcodes.DUP);
+            pushValue(mv, i++);
+            mv.visitTypeInsn(Opcodes.NEW, type(translator).getInternalName());
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL,
+                    type(translator).getInternalName(),
+                    CONSTRUCTOR_NAME,
+                    "()V",
+                    false);
+            mv.visitInsn(Opcodes.AASTORE);
+        }
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        addClass(INDEX_CLASS, cw.toByteArray());
+        super.generate();
+    }
+
+    /**
+     * Collects the classes of a package that extend one of the base classes,
+     * directly or through other classes of the package.
+     * @param basePackage package to scan
+     * @param bases simple names of the base classes
+     * @param result set the qualified names of the found classes are added to
+     * @throws IOException if reading of the sources failed
+     */
+    private void scan(final String basePackage, final Set<String> bases, final Set<String> result) throws IOException {
+        final Path root = packageDir(basePackage);
+        if (!Files.isDirectory(root)) return;
+        final Map<String, Declaration> declarations = new HashMap<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            for (final Path file : (Iterable<Path>) files.filter(path -> path.toString().endsWith(".java"))::iterator) {
+                final String source = Files.readString(file);
+                final Declaration declaration = declaration(file, source);
+                if (declaration != null) {
+                    declarations.put(declaration.simpleName(), declaration);
+                } else if (DIRECT_SUBCLASS_PATTERN.matcher(source).find()) {
+                    throw new IllegalStateException("Class declaration of " + file + " could not be parsed");
+                }
+            }
+        }
+        for (final Declaration declaration : declarations.values()) {
+            if (!extendsBase(declaration, bases, declarations)) continue;
+            if (declaration.modifiers().contains("abstract")) continue;
+            if (!declaration.modifiers().contains("public"))
+                throw new IllegalStateException(declaration.name() + " has to be public to be indexed");
+            result.add(declaration.name());
+        }
+    }
+
+    /**
+     * Parses the declaration of the top level class of a source file.
+     * @param file source file
+     * @param source content of the file
+     * @return declaration of the class or null if the file does not declare a class extending other class
+     */
+    private Declaration declaration(final Path file, final String source) {
+        final String fileName = file.getFileName().toString();
+        final String simpleName = fileName.substring(0, fileName.length() - ".java".length());
+        final Matcher matcher = CLASS_PATTERN.matcher(source);
+        while (matcher.find()) {
+            if (!matcher.group(2).equals(simpleName)) continue;
+            final String relative = sourceDir.toPath().relativize(file.getParent()).toString();
+            return new Declaration(relative.replace(File.separatorChar, '.') + "." + simpleName,
+                    simpleName,
+                    Set.of(matcher.group(1).trim().split("\\s+")),
+                    matcher.group(3));
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the class extends one of the base classes.
+     * @param declaration declaration of the class
+     * @param bases simple names of the base classes
+     * @param declarations declarations of the classes in the scanned package
+     * @return whether the class extends one of the bases
+     */
+    private static boolean extendsBase(final Declaration declaration,
+                                       final Set<String> bases,
+                                       final Map<String, Declaration> declarations) {
+        Declaration current = declaration;
+        for (int depth = 0; depth <= declarations.size(); depth++) {
+            if (bases.contains(current.superclass())) return true;
+            current = declarations.get(current.superclass());
+            if (current == null) return false;
+        }
+        throw new IllegalStateException("Cyclic inheritance of " + declaration.name());
+    }
+
+    private Path packageDir(final String packageName) {
+        return sourceDir.toPath().resolve(packageName.replace('.', '/'));
+    }
+
+    /**
+     * Declaration of a top level class.
+     * @param name qualified name of the class
+     * @param simpleName simple name of the class
+     * @param modifiers modifiers of the class
+     * @param superclass simple name of the superclass
+     */
+    private record Declaration(String name, String simpleName, Set<String> modifiers, String superclass) {
+    }
+
+}
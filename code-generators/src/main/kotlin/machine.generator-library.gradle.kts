@@ -1,4 +1,5 @@
 import org.machinemc.generators.LibraryGeneratorPlugin
+import org.machinemc.generators.packets.PacketIndexGenerator
 
 plugins {
     `java-library`
@@ -8,11 +9,13 @@ apply<LibraryGeneratorPlugin>()
 
 dependencies {
 
-    sequenceOf(
-            "machine-materials",
-            "machine-blockdata",
-    ).forEach {
-        implementation(files("libs/$it.jar"))
+    val libraries = mutableListOf("machine-materials", "machine-blockdata")
+    if (file("src/main/java/" + PacketIndexGenerator.PACKETS_PACKAGE.replace('.', '/')).isDirectory)
+        libraries += "machine-packets"
+    libraries.forEach {
+        val jar = file("libs/$it.jar")
+        check(jar.exists()) { "Machine library $it has not been generated" }
+        implementation(files(jar))
     }
 
-}
\ No newline at end of file
+}
@@ -59,9 +59,11 @@ import org.machinemc.server.exception.ServerExceptionHandler;
 import org.machinemc.server.file.*;
 import org.machinemc.server.network.NettyServer;
 import org.machinemc.server.server.ServerPlayerManager;
+import org.machinemc.server.tick.TickScheduler;
 import org.machinemc.server.translation.TranslatorDispatcher;
 import org.machinemc.server.utils.FileUtils;
 import org.machinemc.server.utils.NetworkUtils;
+import org.machinemc.server.utils.TimerWheel;
 import org.machinemc.server.world.ServerWorld;
 import org.machinemc.server.world.ServerWorldManager;
 import org.machinemc.server.world.biomes.ServerBiome;
@@ -125,7 +127,7 @@ public final class Machine implements Server, RunnableServer {
     private ServerProperties properties;
 
     @Getter
-    private final Scheduler scheduler;
+    private final TickScheduler scheduler;
 
     @Getter
     private CommandDispatcher<CommandExecutor> commandDispatcher;
@@ -172,8 +174,9 @@ public final class Machine implements Server, RunnableServer {
 
         this.platform = Objects.requireNonNull(context.platform(), "Platform of the server can not be null");
 
-        scheduler = new Scheduler(4);
+        scheduler = new TickScheduler(this, 4, Runtime.getRuntime().availableProcessors());
         exceptionHandler = new ServerExceptionHandler(this);
+        TimerWheel.SHARED.setErrorHandler(exceptionHandler::handle);
     }
 
     /**
@@ -285,7 +288,9 @@ public final class Machine implements Server, RunnableServer {
 
         entityManager = ServerEntityManager.createDefault(this);
 
-        playerManager = new ServerPlayerManager(this);
+        final ServerPlayerManager playerManager = new ServerPlayerManager(this);
+        this.playerManager = playerManager;
+        scheduler.addTickable(TickScheduler.Phase.WORLD, playerManager);
 
         try {
             playerDataContainer = new ServerPlayerDataContainer(
@@ -297,7 +302,9 @@ public final class Machine implements Server, RunnableServer {
             application.stopServer(this);
         }
 
-        worldManager = new ServerWorldManager(this);
+        final ServerWorldManager worldManager = new ServerWorldManager(this);
+        this.worldManager = worldManager;
+        scheduler.addTickable(TickScheduler.Phase.WORLD, worldManager);
         try (Stream<Path> paths = Files.walk(directory.toPath(), 2)) {
             for (final Path path : paths.collect(Collectors.toSet())) {
                 if (!path.endsWith(WorldJSON.WORLD_FILE_NAME)) continue;
@@ -357,6 +364,7 @@ public final class Machine implements Server, RunnableServer {
             try {
                 connection = new NettyServer(this);
                 connection.start();
+                scheduler.addTickable(TickScheduler.Phase.NETWORK, connection);
             } catch (Exception exception) {
                 exceptionHandler.handle(exception);
                 application.stopServer(this);
@@ -371,6 +379,13 @@ public final class Machine implements Server, RunnableServer {
             application.stopServer(this);
         }
 
+        try {
+            scheduler.setTPS(properties.getTPS());
+        } catch (IllegalArgumentException exception) {
+            console.warning("Invalid amount of ticks per second in the server properties, using " + DEFAULT_TPS + " instead");
+            scheduler.setTPS(DEFAULT_TPS);
+        }
+
         running = true;
         console.info("Server loaded in " + (System.currentTimeMillis() - start) + "ms");
         scheduler.run(); // blocks the thread
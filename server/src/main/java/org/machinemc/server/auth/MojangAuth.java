@@ -30,6 +30,8 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Utility class for interacting with Mojang auth.
@@ -44,6 +46,13 @@ public final class MojangAuth {
     public static final String MINECRAFT_PROFILE_URL
             = "https://sessionserver.mojang.com/session/minecraft/profile/%s?unsigned=false";
 
+    /**
+     * Executor running the requests, each request blocks its own virtual thread.
+     */
+    private static final Executor EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("Mojang-auth-", 0).factory()
+    );
+
     private MojangAuth() {
         throw new UnsupportedOperationException();
     }
@@ -71,7 +80,7 @@ public final class MojangAuth {
                 }
             } catch (Exception ignored) { }
             return null;
-        });
+        }, EXECUTOR);
     }
 
     /**
@@ -106,7 +115,7 @@ public final class MojangAuth {
                 }
             } catch (Exception ignored) { }
             return Optional.empty();
-        });
+        }, EXECUTOR);
     }
 
     /**
@@ -132,7 +141,7 @@ public final class MojangAuth {
                 }
             } catch (Exception ignored) { }
             return Optional.empty();
-        });
+        }, EXECUTOR);
     }
 
     /**
@@ -142,7 +151,7 @@ public final class MojangAuth {
      */
     public static CompletableFuture<Optional<PlayerTextures>> getSkin(final String username) {
         Objects.requireNonNull(username);
-        return CompletableFuture.supplyAsync(() -> getSkin(getUUID(username).join().orElse(null)).join());
+        return CompletableFuture.supplyAsync(() -> getSkin(getUUID(username).join().orElse(null)).join(), EXECUTOR);
     }
 
 }
@@ -67,6 +67,16 @@ public final class ChunkUtils {
         return xyz >> CHUNK_SIZE_BITS;
     }
 
+    /**
+     * Returns unique index for a chunk at given coordinates.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @return unique index of the chunk
+     */
+    public static long getChunkIndex(final int chunkX, final int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
     /**
      * Converts a global coordinate to a section coordinate.
      * <p>
@@ -14,7 +14,9 @@
  */
 package org.machinemc.server.chunk;
 
+import lombok.AccessLevel;
 import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
 import org.machinemc.api.chunk.Section;
 import org.machinemc.api.entities.Player;
 import org.machinemc.nbt.NBTCompound;
@@ -31,6 +33,7 @@ import org.machinemc.api.utils.FriendlyByteBuf;
 import org.machinemc.server.utils.math.MathUtils;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Default implementation of the chunk.
@@ -51,6 +54,11 @@ public abstract class WorldChunk implements Chunk {
     private final int top;
     private final int height;
 
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong modifications = new AtomicLong();
+    @Getter(AccessLevel.NONE)
+    private volatile @Nullable CachedPacket cachedPacket;
+
     public WorldChunk(final World world, final int chunkX, final int chunkZ) {
         Objects.requireNonNull(world, "World can not be null");
         server = world.getServer();
@@ -67,7 +75,7 @@ public abstract class WorldChunk implements Chunk {
     @Override
     public void sendChunk(final Player player) {
         Objects.requireNonNull(player, "Player can not be null");
-        player.sendPacket(createChunkPacket());
+        player.sendPacket(getChunkPacket());
     }
 
     @Override
@@ -164,6 +172,32 @@ public abstract class WorldChunk implements Chunk {
                 createLightData(sections));
     }
 
+    /**
+     * Returns chunk packet of this chunk, the packet is created and serialized once
+     * and shared until the chunk changes.
+     * <p>
+     * The returned packet is shared and should not be modified.
+     * @return chunk packet of this chunk
+     * @see #invalidateChunkPacket()
+     */
+    public PacketPlayOutChunkData getChunkPacket() {
+        final long version = modifications.get();
+        final CachedPacket cached = cachedPacket;
+        if (cached != null && cached.version() == version) return cached.packet();
+        final PacketPlayOutChunkData packet = createChunkPacket();
+        packet.serialize();
+        cachedPacket = new CachedPacket(version, packet);
+        return packet;
+    }
+
+    /**
+     * Marks the cached chunk packet of this chunk as outdated, should
+     * be called each time the data visible to the client change.
+     */
+    protected void invalidateChunkPacket() {
+        modifications.incrementAndGet();
+    }
+
     /**
      * @return light packet of this chunk
      */
@@ -180,4 +214,12 @@ public abstract class WorldChunk implements Chunk {
                 + ')';
     }
 
+    /**
+     * Chunk packet cached for a version of the chunk.
+     * @param version number of modifications of the chunk when the packet was created
+     * @param packet chunk packet
+     */
+    private record CachedPacket(long version, PacketPlayOutChunkData packet) {
+    }
+
 }
@@ -16,10 +16,6 @@ package org.machinemc.server.chunk.palette;
 
 import org.machinemc.api.chunk.palette.Palette;
 import org.machinemc.api.utils.ServerBuffer;
-import org.machinemc.server.utils.math.MathUtils;
-
-import java.util.LinkedHashSet;
-import java.util.Set;
 
 public class AdaptivePalette implements Palette {
 
@@ -150,7 +146,7 @@ public class AdaptivePalette implements Palette {
 
     /**
      * Optimizes the wrapped palette, either converts FlexiblePalette to
-     * FilledPalette if contains only one entry or resizes the FlexiblePalette
+     * FilledPalette if contains only one entry or compacts the FlexiblePalette
      * if possible.
      * @return optimized palette
      */
@@ -160,23 +156,11 @@ public class AdaptivePalette implements Palette {
         if (!(currentPalette instanceof FlexiblePalette flexiblePalette))
             return currentPalette;
 
-        final int count = flexiblePalette.count();
-        if (count == 0)
+        if (flexiblePalette.count() == 0)
             return new FilledPalette(dimension, 0);
 
-        final Set<Integer> entries = new LinkedHashSet<>(flexiblePalette.paletteToValueList.size());
-        flexiblePalette.getAll((x, y, z, value) -> entries.add(value));
-
-        final int currentBitsPerEntry = flexiblePalette.bitsPerEntry();
-        final int bitsPerEntry;
-
-        if (entries.size() == 1) {
-            return new FilledPalette(dimension, entries.iterator().next());
-        } else if (currentBitsPerEntry > defaultBitsPerEntry
-                && (bitsPerEntry = MathUtils.bitsToRepresent(entries.size() - 1)) < currentBitsPerEntry) {
-            flexiblePalette.resize((byte) bitsPerEntry);
-            return flexiblePalette;
-        }
+        if (flexiblePalette.compact() == 1)
+            return new FilledPalette(dimension, flexiblePalette.get(0, 0, 0));
 
         return currentPalette;
     }
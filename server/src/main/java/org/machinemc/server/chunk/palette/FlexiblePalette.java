@@ -14,10 +14,11 @@
  */
 package org.machinemc.server.chunk.palette;
 
-import io.netty.util.collection.IntObjectHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import org.machinemc.api.chunk.palette.Palette;
 import org.machinemc.api.utils.ServerBuffer;
-import org.machinemc.server.utils.IntegerList;
 import org.machinemc.server.utils.math.MathUtils;
 
 import java.util.Arrays;
@@ -30,6 +31,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class FlexiblePalette implements Palette {
 
     private static final ThreadLocal<int[]> WRITE_CACHE = ThreadLocal.withInitial(() -> new int[4096]);
+    private static final ThreadLocal<IntOpenHashSet> DISTINCT_CACHE = ThreadLocal.withInitial(IntOpenHashSet::new);
 
     protected byte bitsPerEntry;
     protected int count;
@@ -37,16 +39,13 @@ public class FlexiblePalette implements Palette {
     protected final AdaptivePalette adaptivePalette;
     protected long[] values;
 
-    protected IntegerList paletteToValueList;
-    protected IntObjectHashMap<Integer> valueToPaletteMap;
+    protected IntArrayList paletteToValueList;
+    protected Int2IntOpenHashMap valueToPaletteMap;
 
     protected FlexiblePalette(final AdaptivePalette adaptivePalette, final byte bitsPerEntry) {
         this.adaptivePalette = Objects.requireNonNull(adaptivePalette, "Adaptive palette can not be null");
         this.bitsPerEntry = bitsPerEntry;
-        this.paletteToValueList = new IntegerList(1);
-        this.paletteToValueList.add(0);
-        this.valueToPaletteMap = new IntObjectHashMap<>(1);
-        this.valueToPaletteMap.put(0, (Integer) 0);
+        resetPalette();
 
         final int valuesPerLong = Long.SIZE / bitsPerEntry;
         values = new long[(maxSize() + valuesPerLong - 1) / valuesPerLong];
@@ -64,7 +63,7 @@ public class FlexiblePalette implements Palette {
         final int index = sectionIndex / valuesPerLong;
         final int bitIndex = (sectionIndex - index * valuesPerLong) * bitsPerEntry;
         final int value = (int) (values[index] >> bitIndex) & ((1 << bitsPerEntry) - 1);
-        return hasPalette() ? paletteToValueList.get(value) : value;
+        return hasPalette() ? paletteToValueList.getInt(value) : value;
     }
 
     @Override
@@ -211,12 +210,8 @@ public class FlexiblePalette implements Palette {
             return null;
         }
         palette.values = values.clone();
-        palette.paletteToValueList = new IntegerList();
-        palette.valueToPaletteMap = new IntObjectHashMap<>();
-        for (final int i : paletteToValueList.toArray())
-            palette.paletteToValueList.add(i);
-        for (final int i : valueToPaletteMap.keySet())
-            palette.valueToPaletteMap.put(i, valueToPaletteMap.get(i));
+        palette.paletteToValueList = paletteToValueList.clone();
+        palette.valueToPaletteMap = valueToPaletteMap.clone();
         palette.count = count;
         palette.bitsPerEntry = bitsPerEntry;
         return palette;
@@ -226,9 +221,11 @@ public class FlexiblePalette implements Palette {
     public void write(final ServerBuffer buf) {
         buf.writeByte(bitsPerEntry);
         if (bitsPerEntry <= maxBitsPerEntry()) {
-            buf.writeVarInt(paletteToValueList.size());
-            for (final int i : paletteToValueList.toArray())
-                buf.writeVarInt(i);
+            final int size = paletteToValueList.size();
+            final int[] ids = paletteToValueList.elements();
+            buf.writeVarInt(size);
+            for (int i = 0; i < size; i++)
+                buf.writeVarInt(ids[i]);
         }
         buf.writeVarInt(values.length);
         for (final long l : values)
@@ -252,7 +249,7 @@ public class FlexiblePalette implements Palette {
         final int valuesPerLong = Long.SIZE / bitsPerEntry;
         final int size = maxSize();
         final int dimensionMinus = dimension - 1;
-        final int[] ids = hasPalette() ? paletteToValueList.toArray() : null;
+        final int[] ids = hasPalette() ? paletteToValueList.elements() : null;
         final int dimensionBitCount = MathUtils.bitsToRepresent(dimensionMinus);
         final int shiftedDimensionBitCount = dimensionBitCount << 1;
 
@@ -322,6 +319,120 @@ public class FlexiblePalette implements Palette {
         assert this.count == palette.count;
     }
 
+    /**
+     * Removes values that are no longer present from the palette of this palette
+     * and shrinks its bits per entry if possible.
+     * <p>
+     * Only the palette itself is reindexed, the entries are rewritten in place
+     * without any intermediate copy.
+     * @return number of distinct values present in this palette
+     */
+    int compact() {
+        return hasPalette() ? compactPalette() : compactDirect();
+    }
+
+    /**
+     * Compacts palette of this palette, see {@link #compact()}.
+     * @return number of distinct values present in this palette
+     */
+    private int compactPalette() {
+        final int size = paletteToValueList.size();
+        final int[] remap = new int[size];
+        final long[] values = this.values;
+        final int bitsPerEntry = this.bitsPerEntry;
+        final int magicMask = (1 << bitsPerEntry) - 1;
+        final int valuesPerLong = Long.SIZE / bitsPerEntry;
+        final int maxSize = maxSize();
+
+        for (int i = 0; i < values.length; i++) {
+            final long value = values[i];
+            final int startIndex = i * valuesPerLong;
+            final int endIndex = Math.min(startIndex + valuesPerLong, maxSize);
+            for (int index = startIndex; index < endIndex; index++)
+                remap[(int) (value >> (index - startIndex) * bitsPerEntry & magicMask)] = 1;
+        }
+
+        int distinct = 0;
+        for (final int used : remap) distinct += used;
+        if (distinct <= 1 || distinct + 1 - remap[0] == size) return distinct;
+
+        // index 0 is always kept, it stands for the empty value
+        final int[] ids = paletteToValueList.elements();
+        int newSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (i != 0 && remap[i] == 0) {
+                valueToPaletteMap.remove(ids[i]);
+                remap[i] = -1;
+                continue;
+            }
+            ids[newSize] = ids[i];
+            valueToPaletteMap.put(ids[i], newSize);
+            remap[i] = newSize++;
+        }
+        paletteToValueList.size(newSize);
+
+        final byte newBitsPerEntry = (byte) Math.max(adaptivePalette.defaultBitsPerEntry, MathUtils.bitsToRepresent(newSize - 1));
+        repack(remap, newBitsPerEntry);
+        return distinct;
+    }
+
+    /**
+     * Compacts palette without palette (direct palette), see {@link #compact()}.
+     * @return number of distinct values present in this palette
+     */
+    private int compactDirect() {
+        final IntOpenHashSet distinct = DISTINCT_CACHE.get();
+        distinct.clear();
+        getAll((x, y, z, value) -> distinct.add(value));
+        final int size = distinct.size();
+        if (size > 1 && MathUtils.bitsToRepresent(size - 1) <= maxBitsPerEntry()) {
+            resetPalette();
+            resize((byte) Math.max(adaptivePalette.defaultBitsPerEntry, MathUtils.bitsToRepresent(size - 1)));
+        }
+        return size;
+    }
+
+    /**
+     * Rewrites the entries of this palette with new palette indices and bits per entry.
+     * @param remap new palette index for each current palette index
+     * @param newBitsPerEntry new bits per entry
+     */
+    private void repack(final int[] remap, final byte newBitsPerEntry) {
+        final int size = maxSize();
+        final long[] values = this.values;
+        final int bitsPerEntry = this.bitsPerEntry;
+        final int magicMask = (1 << bitsPerEntry) - 1;
+        final int valuesPerLong = Long.SIZE / bitsPerEntry;
+        final int newValuesPerLong = Long.SIZE / newBitsPerEntry;
+        final long clear = (1L << newBitsPerEntry) - 1L;
+        final long[] packed = newBitsPerEntry == bitsPerEntry
+                ? values
+                : new long[(size + newValuesPerLong - 1) / newValuesPerLong];
+
+        for (int index = 0; index < size; index++) {
+            final int oldIndex = index / valuesPerLong;
+            final int oldBitIndex = (index - oldIndex * valuesPerLong) * bitsPerEntry;
+            final int paletteIndex = remap[(int) (values[oldIndex] >> oldBitIndex & magicMask)];
+            final int newIndex = index / newValuesPerLong;
+            final int newBitIndex = (index - newIndex * newValuesPerLong) * newBitsPerEntry;
+            packed[newIndex] = packed[newIndex] & ~(clear << newBitIndex) | ((long) paletteIndex << newBitIndex);
+        }
+
+        this.bitsPerEntry = newBitsPerEntry;
+        this.values = packed;
+    }
+
+    /**
+     * Resets the palette of this palette so it contains only the empty value.
+     */
+    private void resetPalette() {
+        paletteToValueList = new IntArrayList(1);
+        paletteToValueList.add(0);
+        valueToPaletteMap = new Int2IntOpenHashMap(1);
+        valueToPaletteMap.defaultReturnValue(-1);
+        valueToPaletteMap.put(0, 0);
+    }
+
     /**
      * Returns the index of a value in the palette, if not found
      * the value is added to the palette.
@@ -339,8 +450,8 @@ public class FlexiblePalette implements Palette {
             return getPaletteIndex(value);
         }
 
-        final Integer lookup = valueToPaletteMap.putIfAbsent(value, lastPaletteIndex);
-        if (lookup != null) return lookup; // was found
+        final int lookup = valueToPaletteMap.putIfAbsent(value, lastPaletteIndex);
+        if (lookup != -1) return lookup; // was found
 
         // wasn't found and is added
         paletteToValueList.add(value);
@@ -0,0 +1,436 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.entities;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import lombok.Getter;
+import org.machinemc.api.entities.Entity;
+import org.machinemc.api.entities.EntityType;
+import org.machinemc.api.world.EntityPosition;
+import org.machinemc.api.world.World;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Spatial index of entities in a single world.
+ * <p>
+ * Entities are grouped by the chunk sections (16x16x16 blocks) they are in,
+ * so the range queries visit only the sections overlapping the queried area.
+ * The entities are also partitioned by their types and classes, class
+ * partitions are created once the class is queried for the first time.
+ */
+public class EntityIndex {
+
+    private static final int SECTION_SIZE = 16;
+
+    @Getter
+    private final World world;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Long2ObjectMap<Set<Entity>> sections = new Long2ObjectOpenHashMap<>();
+    private final Reference2LongOpenHashMap<Entity> positions = new Reference2LongOpenHashMap<>();
+    private final Map<EntityType, Set<Entity>> types = new EnumMap<>(EntityType.class);
+    private final Map<Class<?>, Set<Entity>> classes = new HashMap<>();
+
+    public EntityIndex(final World world) {
+        this.world = Objects.requireNonNull(world, "World can not be null");
+    }
+
+    /**
+     * Adds an entity to the index.
+     * @param entity entity to add
+     */
+    public void add(final Entity entity) {
+        Objects.requireNonNull(entity, "Entity can not be null");
+        final long section = sectionKey(entity.getLocation());
+        lock.writeLock().lock();
+        try {
+            if (positions.containsKey(entity)) return;
+            positions.put(entity, section);
+            sections.computeIfAbsent(section, key -> new ReferenceOpenHashSet<>()).add(entity);
+            types.computeIfAbsent(entity.getEntityType(), type -> new ReferenceOpenHashSet<>()).add(entity);
+            for (final Map.Entry<Class<?>, Set<Entity>> entry : classes.entrySet()) {
+                if (entry.getKey().isInstance(entity)) entry.getValue().add(entity);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an entity from the index.
+     * @param entity entity to remove
+     * @return whether the entity was present in the index
+     */
+    public boolean remove(final Entity entity) {
+        Objects.requireNonNull(entity, "Entity can not be null");
+        lock.writeLock().lock();
+        try {
+            if (!positions.containsKey(entity)) return false;
+            removeFromSection(entity, positions.removeLong(entity));
+            final Set<Entity> ofType = types.get(entity.getEntityType());
+            if (ofType != null) ofType.remove(entity);
+            for (final Set<Entity> ofClass : classes.values())
+                ofClass.remove(entity);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the section of an entity after its location has changed.
+     * @param entity moved entity
+     */
+    public void move(final Entity entity) {
+        Objects.requireNonNull(entity, "Entity can not be null");
+        final long section = sectionKey(entity.getLocation());
+        lock.writeLock().lock();
+        try {
+            if (!positions.containsKey(entity)) return;
+            final long previous = positions.put(entity, section);
+            if (previous == section) return;
+            removeFromSection(entity, previous);
+            sections.computeIfAbsent(section, key -> new ReferenceOpenHashSet<>()).add(entity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of entities in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return positions.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds all entities of the index to a collection.
+     * @param target target collection
+     */
+    public void collect(final Collection<? super Entity> target) {
+        lock.readLock().lock();
+        try {
+            target.addAll(positions.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds all entities of given type to a collection.
+     * @param entityType type of the entities
+     * @param target target collection
+     */
+    public void collectOfType(final EntityType entityType, final Collection<? super Entity> target) {
+        lock.readLock().lock();
+        try {
+            final Set<Entity> ofType = types.get(entityType);
+            if (ofType != null) target.addAll(ofType);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds all entities of given class to a collection.
+     * @param entityClass class of the entities
+     * @param target target collection
+     * @param <E> entity class
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Entity> void collectOfClass(final Class<E> entityClass, final Collection<? super E> target) {
+        lock.readLock().lock();
+        try {
+            final Set<Entity> ofClass = classes.get(entityClass);
+            if (ofClass != null) {
+                target.addAll((Set<E>) ofClass);
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            final Set<Entity> ofClass = classes.computeIfAbsent(entityClass, key -> {
+                final Set<Entity> entities = new ReferenceOpenHashSet<>();
+                for (final Entity entity : positions.keySet()) {
+                    if (key.isInstance(entity)) entities.add(entity);
+                }
+                return entities;
+            });
+            target.addAll((Set<E>) ofClass);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds all entities within given distance from a position to a collection.
+     * @param center center of the range
+     * @param range maximal distance from the center
+     * @param target target collection
+     */
+    public void collectInRange(final EntityPosition center, final double range, final Collection<? super Entity> target) {
+        Objects.requireNonNull(center, "Center can not be null");
+        final double rangeSquared = range * range;
+        collect(center.getX() - range, center.getY() - range, center.getZ() - range,
+                center.getX() + range, center.getY() + range, center.getZ() + range,
+                position -> distanceSquared(center, position) <= rangeSquared,
+                target);
+    }
+
+    /**
+     * Adds all entities within an axis aligned box to a collection.
+     * @param minX minimal x coordinate of the box
+     * @param minY minimal y coordinate of the box
+     * @param minZ minimal z coordinate of the box
+     * @param maxX maximal x coordinate of the box
+     * @param maxY maximal y coordinate of the box
+     * @param maxZ maximal z coordinate of the box
+     * @param target target collection
+     */
+    public void collectInBox(final double minX, final double minY, final double minZ,
+                             final double maxX, final double maxY, final double maxZ,
+                             final Collection<? super Entity> target) {
+        collect(minX, minY, minZ, maxX, maxY, maxZ,
+                position -> position.getX() >= minX && position.getX() <= maxX
+                        && position.getY() >= minY && position.getY() <= maxY
+                        && position.getZ() >= minZ && position.getZ() <= maxZ,
+                target);
+    }
+
+    /**
+     * Adds all entities in a chunk to a collection.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @param target target collection
+     */
+    public void collectInChunk(final int chunkX, final int chunkZ, final Collection<? super Entity> target) {
+        final int minX = chunkX * SECTION_SIZE, minZ = chunkZ * SECTION_SIZE;
+        collect(minX, world.getDimensionType().getMinY(), minZ,
+                minX + SECTION_SIZE - 1, world.getDimensionType().getMaxY(), minZ + SECTION_SIZE - 1,
+                position -> section(position.getX()) == chunkX && section(position.getZ()) == chunkZ,
+                target);
+    }
+
+    /**
+     * Returns entities nearest to a position, sorted by their distance.
+     * <p>
+     * Sections are visited in growing cubic shells around the center until
+     * no section outside the visited area can contain a nearer entity.
+     * @param center center position
+     * @param count maximal number of returned entities
+     * @return nearest entities
+     */
+    public List<Entity> nearest(final EntityPosition center, final int count) {
+        Objects.requireNonNull(center, "Center can not be null");
+        if (count <= 0) return List.of();
+        final PriorityQueue<Candidate> nearest = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distanceSquared).reversed());
+        final int centerX = section(center.getX()), centerY = section(center.getY()), centerZ = section(center.getZ());
+
+        lock.readLock().lock();
+        try {
+            final int total = positions.size();
+            int visited = 0;
+            for (int radius = 0; visited < total; radius++) {
+                final long side = 2L * radius + 1;
+                if (side * side * side > sections.size()) {
+                    // the shells are larger than the rest of the index, visit the remaining sections directly
+                    for (final Long2ObjectMap.Entry<Set<Entity>> entry : sections.long2ObjectEntrySet()) {
+                        final long key = entry.getLongKey();
+                        final int distance = Math.max(Math.abs(sectionX(key) - centerX),
+                                Math.max(Math.abs(sectionY(key) - centerY), Math.abs(sectionZ(key) - centerZ)));
+                        if (distance >= radius) offer(nearest, entry.getValue(), center, count);
+                    }
+                    break;
+                }
+                for (int x = -radius; x <= radius; x++) {
+                    for (int y = -radius; y <= radius; y++) {
+                        final boolean edge = Math.abs(x) == radius || Math.abs(y) == radius;
+                        for (int z = -radius; z <= radius; z += edge || radius == 0 ? 1 : 2 * radius) {
+                            final Set<Entity> section = sections.get(sectionKey(centerX + x, centerY + y, centerZ + z));
+                            if (section == null) continue;
+                            visited += section.size();
+                            offer(nearest, section, center, count);
+                        }
+                    }
+                }
+                final double reach = (double) radius * SECTION_SIZE;
+                if (nearest.size() == count && nearest.peek().distanceSquared() <= reach * reach) break;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        final Entity[] result = new Entity[nearest.size()];
+        for (int i = result.length - 1; i >= 0; i--)
+            result[i] = nearest.poll().entity();
+        return List.of(result);
+    }
+
+    /**
+     * Adds all entities in sections overlapping given area that match a predicate
+     * to a collection.
+     * @param minX minimal x coordinate of the area
+     * @param minY minimal y coordinate of the area
+     * @param minZ minimal z coordinate of the area
+     * @param maxX maximal x coordinate of the area
+     * @param maxY maximal y coordinate of the area
+     * @param maxZ maximal z coordinate of the area
+     * @param predicate predicate for the positions of the entities
+     * @param target target collection
+     */
+    private void collect(final double minX, final double minY, final double minZ,
+                         final double maxX, final double maxY, final double maxZ,
+                         final Predicate<EntityPosition> predicate,
+                         final Collection<? super Entity> target) {
+        final int fromX = section(minX), fromY = section(minY), fromZ = section(minZ);
+        final int toX = section(maxX), toY = section(maxY), toZ = section(maxZ);
+        final long cells = (toX - fromX + 1L) * (toY - fromY + 1L) * (toZ - fromZ + 1L);
+
+        lock.readLock().lock();
+        try {
+            if (cells > sections.size()) {
+                for (final Long2ObjectMap.Entry<Set<Entity>> entry : sections.long2ObjectEntrySet()) {
+                    final long key = entry.getLongKey();
+                    final int x = sectionX(key), y = sectionY(key), z = sectionZ(key);
+                    if (x < fromX || x > toX || y < fromY || y > toY || z < fromZ || z > toZ) continue;
+                    collect(entry.getValue(), predicate, target);
+                }
+                return;
+            }
+            for (int x = fromX; x <= toX; x++) {
+                for (int y = fromY; y <= toY; y++) {
+                    for (int z = fromZ; z <= toZ; z++) {
+                        final Set<Entity> section = sections.get(sectionKey(x, y, z));
+                        if (section != null) collect(section, predicate, target);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an entity from a section, empty sections are removed from the index.
+     * @param entity entity to remove
+     * @param section key of the section
+     */
+    private void removeFromSection(final Entity entity, final long section) {
+        final Set<Entity> entities = sections.get(section);
+        if (entities == null) return;
+        entities.remove(entity);
+        if (entities.isEmpty()) sections.remove(section);
+    }
+
+    /**
+     * Adds all entities of a section matching a predicate to a collection.
+     * @param section entities of the section
+     * @param predicate predicate for the positions of the entities
+     * @param target target collection
+     */
+    private static void collect(final Set<Entity> section,
+                                final Predicate<EntityPosition> predicate,
+                                final Collection<? super Entity> target) {
+        for (final Entity entity : section) {
+            if (predicate.test(entity.getLocation())) target.add(entity);
+        }
+    }
+
+    /**
+     * Offers entities of a section to the nearest entities query.
+     * @param nearest currently nearest entities, the farthest one first
+     * @param section entities of the section
+     * @param center center of the query
+     * @param count maximal number of returned entities
+     */
+    private static void offer(final PriorityQueue<Candidate> nearest,
+                              final Set<Entity> section,
+                              final EntityPosition center,
+                              final int count) {
+        for (final Entity entity : section) {
+            final double distance = distanceSquared(center, entity.getLocation());
+            if (nearest.size() < count) {
+                nearest.add(new Candidate(entity, distance));
+            } else if (distance < nearest.peek().distanceSquared()) {
+                nearest.poll();
+                nearest.add(new Candidate(entity, distance));
+            }
+        }
+    }
+
+    private static double distanceSquared(final EntityPosition a, final EntityPosition b) {
+        final double x = a.getX() - b.getX(), y = a.getY() - b.getY(), z = a.getZ() - b.getZ();
+        return x * x + y * y + z * z;
+    }
+
+    /**
+     * Returns section coordinate of given coordinate.
+     * @param coordinate coordinate
+     * @return section coordinate
+     */
+    private static int section(final double coordinate) {
+        return (int) Math.floor(coordinate) >> 4;
+    }
+
+    private static long sectionKey(final EntityPosition position) {
+        return sectionKey(section(position.getX()), section(position.getY()), section(position.getZ()));
+    }
+
+    /**
+     * Returns key of a section, 22 bits for the x and z coordinates and 20 bits for the y coordinate.
+     * @param x section x coordinate
+     * @param y section y coordinate
+     * @param z section z coordinate
+     * @return key of the section
+     */
+    private static long sectionKey(final int x, final int y, final int z) {
+        return ((long) (x & 0x3FFFFF) << 42) | ((long) (z & 0x3FFFFF) << 20) | (y & 0xFFFFF);
+    }
+
+    private static int sectionX(final long key) {
+        return (int) (key >> 42);
+    }
+
+    private static int sectionY(final long key) {
+        return (int) (key << 44 >> 44);
+    }
+
+    private static int sectionZ(final long key) {
+        return (int) (key << 22 >> 42);
+    }
+
+    /**
+     * Entity found by the nearest entities query.
+     * @param entity entity
+     * @param distanceSquared squared distance of the entity from the center
+     */
+    private record Candidate(Entity entity, double distanceSquared) {
+    }
+
+}
@@ -16,13 +16,14 @@ package org.machinemc.server.entities;
 
 import lombok.Getter;
 import lombok.Setter;
+import lombok.Synchronized;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
 import org.machinemc.api.Server;
 import org.machinemc.api.entities.Entity;
 import org.machinemc.api.entities.EntityType;
 import org.machinemc.api.entities.Player;
 import org.machinemc.api.network.PlayerConnection;
-import org.machinemc.api.network.ServerConnection;
 import org.machinemc.api.network.packets.Packet;
 import org.machinemc.api.world.EntityPosition;
 import org.machinemc.api.world.Location;
@@ -30,18 +31,29 @@ import org.machinemc.api.world.World;
 import org.machinemc.nbt.NBTCompound;
 import org.machinemc.nbt.NBTList;
 import org.machinemc.scriptive.components.Component;
+import org.machinemc.server.chunk.ChunkUtils;
 import org.machinemc.server.network.packets.out.play.*;
+import org.machinemc.server.tick.Tickable;
 import org.machinemc.server.utils.EntityUtils;
 import org.machinemc.server.utils.UUIDUtils;
+import org.machinemc.server.world.PlayerChunkTracker;
+import org.machinemc.server.world.ServerWorld;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.Map.entry;
 
 /**
  * Default server entity implementation.
  */
-public abstract class ServerEntity implements Entity {
+public abstract class ServerEntity implements Entity, Tickable {
+
+    /**
+     * Number of ticks after which the absolute position of a moving entity
+     * is sent again to correct the drift of the relative moves on the client.
+     */
+    public static final int RESYNC_INTERVAL = 400;
 
     @Getter
     private final Server server;
@@ -79,6 +91,15 @@ public abstract class ServerEntity implements Entity {
     private boolean invulnerable;
     @Getter @Setter
     private int portalCooldown;
+    private final Set<Player> viewers = ConcurrentHashMap.newKeySet();
+
+    private final Object movementLock = new Object();
+    private volatile boolean movementDirty;
+    private long sentX, sentY, sentZ;
+    private byte sentYaw, sentPitch;
+    private boolean sentOnGround;
+    private boolean relativeSinceSync;
+    private long lastSync;
 
     public ServerEntity(final Server server, final EntityType entityType, final UUID uuid) {
         this.server = Objects.requireNonNull(server, "Server can not be null");
@@ -152,9 +173,121 @@ public abstract class ServerEntity implements Entity {
      */
     protected void setLocation(final Location location, final boolean setPreviousLocation) {
         Objects.requireNonNull(location, "Location can not be null");
+        final Location previous = this.location;
         if (setPreviousLocation)
-            previousLocation = this.location;
+            previousLocation = previous;
         this.location = location;
+        if (!active) return;
+        movementDirty = true;
+        if (getServer().getEntityManager() instanceof ServerEntityManager entityManager)
+            entityManager.updateEntity(this);
+        if (!previous.getWorld().equals(location.getWorld())
+                || chunkCoordinate(previous.getX()) != chunkCoordinate(location.getX())
+                || chunkCoordinate(previous.getZ()) != chunkCoordinate(location.getZ()))
+            updateViewers();
+    }
+
+    /**
+     * @return players that can see this entity
+     */
+    public @Unmodifiable Set<Player> getViewers() {
+        return Collections.unmodifiableSet(viewers);
+    }
+
+    /**
+     * Adds a player to the viewers of this entity, the entity is spawned for the new viewer.
+     * <p>
+     * The entity is spawned at the position last sent to the viewers, the spawn packets
+     * are sent while holding the movement lock, so the following relative moves apply
+     * to the new viewer the same way as to the others.
+     * @param player new viewer
+     * @return whether the player has been added
+     */
+    @Synchronized("movementLock")
+    public boolean addViewer(final Player player) {
+        Objects.requireNonNull(player, "Player can not be null");
+        if (player == this || !viewers.add(player)) return false;
+        if (!player.getConnection().isOpen()) return true;
+        final Location sent = Location.of(
+                decodePosition(sentX), decodePosition(sentY), decodePosition(sentZ),
+                decodeAngle(sentYaw), decodeAngle(sentPitch),
+                location.getWorld());
+        player.sendPackets(getSpawnPackets(sent, sentOnGround));
+        return true;
+    }
+
+    /**
+     * Removes a player from the viewers of this entity, the caller
+     * is responsible for despawning the entity for the player.
+     * @param player viewer to remove
+     * @return whether the player has been removed
+     * @see PacketPlayOutRemoveEntities
+     */
+    public boolean removeViewer(final Player player) {
+        return viewers.remove(Objects.requireNonNull(player, "Player can not be null"));
+    }
+
+    /**
+     * Returns packets that spawn the entity for a new viewer, by default
+     * only the position of the entity is synchronized.
+     * @param location location of the entity known to the viewers
+     * @param onGround on ground state of the entity known to the viewers
+     * @return spawn packets
+     */
+    protected List<Packet> getSpawnPackets(final Location location, final boolean onGround) {
+        return List.of(new PacketPlayOutTeleportEntity(getEntityID(), location, onGround));
+    }
+
+    /**
+     * Sends a packet to all viewers of this entity.
+     * @param packet packet to send
+     */
+    public void sendToViewers(final Packet packet) {
+        Objects.requireNonNull(packet, "Packet can not be null");
+        if (viewers.isEmpty()) return;
+        final List<PlayerConnection> connections = new ArrayList<>(viewers.size());
+        for (final Player viewer : viewers)
+            connections.add(viewer.getConnection());
+        getServer().getConnection().broadcastPacket(packet, connections);
+    }
+
+    /**
+     * Updates the viewers of this entity after it moved to a different chunk,
+     * players with the chunk of the entity loaded become its viewers.
+     */
+    protected void updateViewers() {
+        final World world = getWorld();
+        final int chunkX = chunkCoordinate(location.getX());
+        final int chunkZ = chunkCoordinate(location.getZ());
+        if (!(world instanceof ServerWorld serverWorld)) {
+            despawn(new ArrayList<>(viewers));
+            return;
+        }
+        final List<Player> removed = new ArrayList<>();
+        for (final Player viewer : viewers) {
+            final boolean visible = serverWorld.getChunkTracker(viewer)
+                    .map(tracker -> tracker.isLoaded(chunkX, chunkZ))
+                    .orElse(false);
+            if (!visible) removed.add(viewer);
+        }
+        despawn(removed);
+        for (final PlayerChunkTracker tracker : serverWorld.getChunkTrackers()) {
+            if (tracker.isLoaded(chunkX, chunkZ))
+                addViewer(tracker.getPlayer());
+        }
+    }
+
+    /**
+     * Removes the players from the viewers and despawns the entity for them.
+     * @param players viewers to remove
+     */
+    private void despawn(final Collection<Player> players) {
+        final List<PlayerConnection> connections = new ArrayList<>(players.size());
+        for (final Player player : players) {
+            if (removeViewer(player)) connections.add(player.getConnection());
+        }
+        if (connections.isEmpty()) return;
+        getServer().getConnection().broadcastPacket(new PacketPlayOutRemoveEntities(new int[]{getEntityID()}), connections);
     }
 
     /**
@@ -171,7 +304,9 @@ public abstract class ServerEntity implements Entity {
             throw new IllegalStateException(this + " is already initiated");
         active = true;
         getServer().getEntityManager().addEntity(this);
+        resetMovement();
         getWorld().spawn(this);
+        updateViewers();
     }
 
     @Override
@@ -179,67 +314,106 @@ public abstract class ServerEntity implements Entity {
         if (!active)
             throw new IllegalStateException(this + " is not active");
         active = false;
-        getServer().getConnection().broadcastPacket(new PacketPlayOutRemoveEntities(new int[]{getEntityID()}));
+        sendToViewers(new PacketPlayOutRemoveEntities(new int[]{getEntityID()}));
         getServer().getEntityManager().removeEntity(this);
         getWorld().remove(this);
+        viewers.clear();
     }
 
     /**
      * Handles the movement of the entity.
+     * <p>
+     * The movement is not sent right away, changes made during a tick are
+     * sent to the viewers once at the end of the tick, see {@link #broadcastMovement(long)}.
      * @param position new position
      * @param onGround if the entity is on ground
      */
     public void handleMovement(final EntityPosition position, final boolean onGround) {
         Objects.requireNonNull(position, "Position can not be null");
-
         final Location currentLocation = getLocation();
-
-        final double deltaX = Math.abs(position.getX() - currentLocation.getX());
-        final double deltaY = Math.abs(position.getY() - currentLocation.getY());
-        final double deltaZ = Math.abs(position.getZ() - currentLocation.getZ());
-        final float deltaYaw = Math.abs(position.getYaw() - currentLocation.getYaw());
-        final float deltaPitch = Math.abs(position.getPitch() - currentLocation.getPitch());
-
-        final boolean positionChange = deltaX + deltaY + deltaZ > 0;
-        final boolean rotationChange = deltaYaw + deltaPitch > 0;
-
-        if (!(positionChange || rotationChange))
+        if (position.getX() == currentLocation.getX()
+                && position.getY() == currentLocation.getY()
+                && position.getZ() == currentLocation.getZ()
+                && position.getYaw() == currentLocation.getYaw()
+                && position.getPitch() == currentLocation.getPitch()
+                && onGround == isOnGround())
             return;
+        handleOnGround(onGround);
+        setLocation(Location.of(position, getWorld()), true);
+    }
 
-        final PlayerConnection connection = this instanceof Player player
-                ? player.getConnection()
-                : null;
-        final ServerConnection serverConnection = getServer().getConnection();
-
-        if (deltaX > 8 || deltaY > 8 || deltaZ > 8) {
-            final Packet teleportPacket = new PacketPlayOutTeleportEntity(getEntityID(), position, onGround);
-            serverConnection.broadcastPacket(teleportPacket, connected -> connected != connection);
+    /**
+     * Sends the movement of the entity accumulated since the last broadcast to its viewers.
+     * <p>
+     * The smallest fitting packet is used; relative moves are computed from the position
+     * last sent to the viewers, so the rounding errors do not accumulate, and the absolute
+     * position is sent again each {@link #RESYNC_INTERVAL} ticks after a relative move.
+     * @param tick number of the current tick
+     */
+    @Synchronized("movementLock")
+    protected void broadcastMovement(final long tick) {
+        final boolean resync = relativeSinceSync && tick - lastSync >= RESYNC_INTERVAL;
+        if (!movementDirty && !resync) return;
+        movementDirty = false;
+
+        final Location location = this.location;
+        final long x = encodePosition(location.getX());
+        final long y = encodePosition(location.getY());
+        final long z = encodePosition(location.getZ());
+        final byte yaw = encodeAngle(location.getYaw());
+        final byte pitch = encodeAngle(location.getPitch());
+        final boolean onGround = isOnGround();
+
+        final long deltaX = x - sentX, deltaY = y - sentY, deltaZ = z - sentZ;
+        final boolean moved = deltaX != 0 || deltaY != 0 || deltaZ != 0 || onGround != sentOnGround;
+        final boolean rotated = yaw != sentYaw || pitch != sentPitch;
+        if (!moved && !rotated && !resync) return;
+
+        final Packet packet;
+        if (resync || !fitsDelta(deltaX) || !fitsDelta(deltaY) || !fitsDelta(deltaZ)) {
+            packet = new PacketPlayOutTeleportEntity(getEntityID(), location, onGround);
+            relativeSinceSync = false;
+            lastSync = tick;
         } else {
-            final Packet positionPacket;
-            if (rotationChange) {
-                positionPacket = new PacketPlayOutEntityPositionAndRotation(
-                        getEntityID(),
-                        previousLocation,
-                        currentLocation,
-                        onGround);
-
+            if (!relativeSinceSync) lastSync = tick;
+            relativeSinceSync = true;
+            if (moved && rotated) {
+                packet = new PacketPlayOutEntityPositionAndRotation(getEntityID(),
+                        (short) deltaX, (short) deltaY, (short) deltaZ,
+                        location.getYaw(), location.getPitch(), onGround);
+            } else if (moved) {
+                packet = new PacketPlayOutEntityPosition(getEntityID(), (short) deltaX, (short) deltaY, (short) deltaZ, onGround);
             } else {
-                positionPacket = new PacketPlayOutEntityPosition(
-                        getEntityID(),
-                        previousLocation,
-                        currentLocation,
-                        onGround);
+                packet = new PacketPlayOutEntityRotation(getEntityID(), location.getYaw(), location.getPitch(), onGround);
             }
-            serverConnection.broadcastPacket(positionPacket, connected -> connected != connection);
-        }
-
-        if (rotationChange) {
-            final Packet headRotationPacket = new PacketPlayOutHeadRotation(getEntityID(), position.getYaw());
-            serverConnection.broadcastPacket(headRotationPacket, connected -> connected != connection);
         }
+        sendToViewers(packet);
+        if (yaw != sentYaw)
+            sendToViewers(new PacketPlayOutHeadRotation(getEntityID(), location.getYaw()));
+
+        sentX = x;
+        sentY = y;
+        sentZ = z;
+        sentYaw = yaw;
+        sentPitch = pitch;
+        sentOnGround = onGround;
+    }
 
-        handleOnGround(onGround);
-        setLocation(Location.of(position, getWorld()), true);
+    /**
+     * Marks the current location of the entity as the one known to the clients,
+     * used when the entity is spawned for the clients.
+     */
+    @Synchronized("movementLock")
+    protected void resetMovement() {
+        final Location location = this.location;
+        sentX = encodePosition(location.getX());
+        sentY = encodePosition(location.getY());
+        sentZ = encodePosition(location.getZ());
+        sentYaw = encodeAngle(location.getYaw());
+        sentPitch = encodeAngle(location.getPitch());
+        sentOnGround = isOnGround();
+        movementDirty = false;
+        relativeSinceSync = false;
     }
 
     /**
@@ -250,6 +424,15 @@ public abstract class ServerEntity implements Entity {
         setOnGround(onGround);
     }
 
+    /**
+     * Updates the entity, called once per tick by the world the entity is in.
+     * @param tick number of the current tick
+     */
+    @Override
+    public void tick(final long tick) {
+        broadcastMovement(tick);
+    }
+
     @Override
     public NBTCompound toNBT() {
         final NBTCompound compound = new NBTCompound(Map.ofEntries(
@@ -340,4 +523,57 @@ public abstract class ServerEntity implements Entity {
                 + ')';
     }
 
+    /**
+     * Returns chunk coordinate of given coordinate.
+     * @param coordinate coordinate
+     * @return chunk coordinate
+     */
+    private static int chunkCoordinate(final double coordinate) {
+        return ChunkUtils.getChunkCoordinate((int) Math.floor(coordinate));
+    }
+
+    /**
+     * Encodes a coordinate in the precision of the relative move packets.
+     * @param coordinate coordinate
+     * @return encoded coordinate
+     */
+    private static long encodePosition(final double coordinate) {
+        return Math.round(coordinate * 4096);
+    }
+
+    /**
+     * Converts the encoded coordinate back to the block units.
+     * @param encoded encoded coordinate
+     * @return coordinate
+     */
+    private static double decodePosition(final long encoded) {
+        return encoded / 4096d;
+    }
+
+    /**
+     * Encodes an angle in the precision used by the packets.
+     * @param angle angle
+     * @return encoded angle
+     */
+    private static byte encodeAngle(final float angle) {
+        return (byte) (angle * 256f / 360f);
+    }
+
+    /**
+     * Converts the encoded angle back to degrees.
+     * @param encoded encoded angle
+     * @return angle in degrees
+     */
+    private static float decodeAngle(final byte encoded) {
+        return encoded * 360f / 256f;
+    }
+
+    /**
+     * @param delta encoded difference of a coordinate
+     * @return whether the difference fits into a relative move packet
+     */
+    private static boolean fitsDelta(final long delta) {
+        return delta >= Short.MIN_VALUE && delta <= Short.MAX_VALUE;
+    }
+
 }
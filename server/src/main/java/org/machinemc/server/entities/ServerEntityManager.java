@@ -15,10 +15,12 @@
 package org.machinemc.server.entities;
 
 import lombok.Getter;
+import org.jetbrains.annotations.Unmodifiable;
 import org.machinemc.api.Server;
 import org.machinemc.api.entities.Entity;
 import org.machinemc.api.entities.EntityManager;
 import org.machinemc.api.entities.EntityType;
+import org.machinemc.api.world.Location;
 import org.machinemc.api.world.World;
 
 import java.util.*;
@@ -27,13 +29,16 @@ import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
- * Default entity manager implementation.
+ * Default entity manager implementation, entities of each world
+ * are kept in a spatial {@link EntityIndex}.
  */
 public class ServerEntityManager implements EntityManager {
 
     @Getter
     private final Server server;
     private final Map<UUID, Entity> entityMap = new ConcurrentHashMap<>();
+    private final Map<World, EntityIndex> indexes = new ConcurrentHashMap<>();
+    private final Map<Entity, EntityIndex> placements = new ConcurrentHashMap<>();
 
     public ServerEntityManager(final Server server) {
         this.server = Objects.requireNonNull(server, "Server can not be null");
@@ -51,37 +56,41 @@ public class ServerEntityManager implements EntityManager {
     @Override
     public Set<Entity> getEntitiesOfType(final EntityType entityType) {
         Objects.requireNonNull(entityType, "Entity type can not be null");
-        return getEntities().stream()
-                .filter(entity -> entity.getEntityType() == entityType)
-                .collect(Collectors.toUnmodifiableSet());
+        final Set<Entity> entities = new LinkedHashSet<>();
+        for (final EntityIndex index : indexes.values())
+            index.collectOfType(entityType, entities);
+        return Collections.unmodifiableSet(entities);
     }
 
     @Override
     public Set<Entity> getEntitiesOfType(final EntityType entityType, final World world) {
         Objects.requireNonNull(entityType, "Entity type can not be null");
-        return getEntities(world).stream()
-                .filter(entity -> entity.getEntityType() == entityType)
-                .collect(Collectors.toUnmodifiableSet());
+        Objects.requireNonNull(world, "World can not be null");
+        final EntityIndex index = indexes.get(world);
+        if (index == null) return Collections.emptySet();
+        final Set<Entity> entities = new LinkedHashSet<>();
+        index.collectOfType(entityType, entities);
+        return Collections.unmodifiableSet(entities);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <E extends Entity> Set<E> getEntitiesOfClass(final Class<E> entityClass) {
         Objects.requireNonNull(entityClass, "Entity class can not be null");
-        return getEntities().stream()
-                .filter(entity -> entityClass.isAssignableFrom(entity.getClass()))
-                .map(entity -> (E) entity)
-                .collect(Collectors.toUnmodifiableSet());
+        final Set<E> entities = new LinkedHashSet<>();
+        for (final EntityIndex index : indexes.values())
+            index.collectOfClass(entityClass, entities);
+        return Collections.unmodifiableSet(entities);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <E extends Entity> Set<E> getEntitiesOfClass(final Class<E> entityClass, final World world) {
         Objects.requireNonNull(entityClass, "Entity class can not be null");
-        return getEntities(world).stream()
-                .filter(entity -> entityClass.isAssignableFrom(entity.getClass()))
-                .map(entity -> (E) entity)
-                .collect(Collectors.toUnmodifiableSet());
+        Objects.requireNonNull(world, "World can not be null");
+        final EntityIndex index = indexes.get(world);
+        if (index == null) return Collections.emptySet();
+        final Set<E> entities = new LinkedHashSet<>();
+        index.collectOfClass(entityClass, entities);
+        return Collections.unmodifiableSet(entities);
     }
 
     @Override
@@ -93,7 +102,11 @@ public class ServerEntityManager implements EntityManager {
     @Override
     public Set<Entity> getEntities(final World world) {
         Objects.requireNonNull(world, "World can not be null");
-        return getEntities(entity -> entity.getWorld().equals(world));
+        final EntityIndex index = indexes.get(world);
+        if (index == null) return Collections.emptySet();
+        final Set<Entity> entities = new LinkedHashSet<>();
+        index.collect(entities);
+        return Collections.unmodifiableSet(entities);
     }
 
     @Override
@@ -102,6 +115,55 @@ public class ServerEntityManager implements EntityManager {
         return getEntities().stream().filter(predicate).collect(Collectors.toSet());
     }
 
+    @Override
+    public Set<Entity> getEntitiesInRange(final Location center, final double range) {
+        Objects.requireNonNull(center, "Center can not be null");
+        final EntityIndex index = indexes.get(center.getWorld());
+        if (index == null) return Collections.emptySet();
+        final Set<Entity> entities = new LinkedHashSet<>();
+        index.collectInRange(center, range, entities);
+        return Collections.unmodifiableSet(entities);
+    }
+
+    @Override
+    public Set<Entity> getEntitiesInBox(final Location from, final Location to) {
+        Objects.requireNonNull(from, "First corner can not be null");
+        Objects.requireNonNull(to, "Second corner can not be null");
+        if (!from.getWorld().equals(to.getWorld()))
+            throw new IllegalArgumentException("Corners of the box have to be in the same world");
+        final EntityIndex index = indexes.get(from.getWorld());
+        if (index == null) return Collections.emptySet();
+        final Set<Entity> entities = new LinkedHashSet<>();
+        index.collectInBox(Math.min(from.getX(), to.getX()), Math.min(from.getY(), to.getY()), Math.min(from.getZ(), to.getZ()),
+                Math.max(from.getX(), to.getX()), Math.max(from.getY(), to.getY()), Math.max(from.getZ(), to.getZ()),
+                entities);
+        return Collections.unmodifiableSet(entities);
+    }
+
+    @Override
+    public List<Entity> getNearestEntities(final Location center, final int count) {
+        Objects.requireNonNull(center, "Center can not be null");
+        final EntityIndex index = indexes.get(center.getWorld());
+        if (index == null) return List.of();
+        return index.nearest(center, count);
+    }
+
+    /**
+     * Returns entities in a chunk of a world.
+     * @param world world of the chunk
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @return entities in the chunk
+     */
+    public @Unmodifiable List<Entity> getEntitiesInChunk(final World world, final int chunkX, final int chunkZ) {
+        Objects.requireNonNull(world, "World can not be null");
+        final EntityIndex index = indexes.get(world);
+        if (index == null) return List.of();
+        final List<Entity> entities = new ArrayList<>();
+        index.collectInChunk(chunkX, chunkZ, entities);
+        return Collections.unmodifiableList(entities);
+    }
+
     @Override
     public Optional<Entity> getEntity(final UUID uuid) {
         Objects.requireNonNull(uuid, "UUID can not be null");
@@ -112,12 +174,35 @@ public class ServerEntityManager implements EntityManager {
     public void addEntity(final Entity entity) {
         Objects.requireNonNull(entity, "Entity can not be null");
         entityMap.put(entity.getUUID(), entity);
+        final EntityIndex index = indexes.computeIfAbsent(entity.getWorld(), EntityIndex::new);
+        index.add(entity);
+        placements.put(entity, index);
     }
 
     @Override
     public void removeEntity(final Entity entity) {
         Objects.requireNonNull(entity, "Entity can not be null");
         entityMap.remove(entity.getUUID());
+        final EntityIndex index = placements.remove(entity);
+        if (index != null) index.remove(entity);
+    }
+
+    /**
+     * Updates the spatial index of an entity after its location has changed.
+     * @param entity moved entity
+     */
+    public void updateEntity(final Entity entity) {
+        Objects.requireNonNull(entity, "Entity can not be null");
+        final EntityIndex current = placements.get(entity);
+        if (current == null) return;
+        if (current.getWorld().equals(entity.getWorld())) {
+            current.move(entity);
+            return;
+        }
+        current.remove(entity);
+        final EntityIndex index = indexes.computeIfAbsent(entity.getWorld(), EntityIndex::new);
+        index.add(entity);
+        placements.put(entity, index);
     }
 
 }
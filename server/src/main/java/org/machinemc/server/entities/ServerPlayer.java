@@ -46,9 +46,9 @@ import org.machinemc.server.chat.SignedMessageChain;
 import org.machinemc.server.network.ClientConnection;
 import org.machinemc.server.network.packets.out.play.*;
 import org.machinemc.server.network.packets.out.play.PacketPlayOutSynchronizePlayerPosition.TeleportFlags;
+import org.machinemc.server.server.ServerPlayerManager;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Default implementation of player.
@@ -83,6 +83,8 @@ public final class ServerPlayer extends ServerLivingEntity implements Player {
     private Component displayName;
     @Getter
     private Component playerListName;
+    @Getter
+    private volatile boolean announced;
 
     private int teleportID = 0;
     private boolean teleporting = false;
@@ -208,14 +210,17 @@ public final class ServerPlayer extends ServerLivingEntity implements Player {
                 getPortalCooldown()
         ));
 
-        super.init();
+        // Player info of the players already on the server, sent before
+        // the player starts loading chunks with the players in them
+        if (getServer().getPlayerManager() instanceof ServerPlayerManager manager) {
+            manager.sendPlayerList(this);
+        } else {
+            final Player[] players = getServer().getEntityManager().getEntitiesOfClass(Player.class).toArray(new Player[0]);
+            if (players.length != 0)
+                sendPacket(new PacketPlayOutPlayerInfo(EnumSet.allOf(PacketPlayOutPlayerInfo.Action.class), players));
+        }
 
-        // Other players
-        final Set<PlayerConnection> others = getServer().getConnection().getClients().stream()
-                .filter(connection -> connection.getState().orElse(null) == PlayerConnection.ClientState.PLAY)
-                .filter(connection -> connection.getOwner().isPresent())
-                .filter(connection -> connection != getConnection())
-                .collect(Collectors.toSet());
+        super.init();
 
         // Spawn Sequence: https://wiki.vg/Protocol_FAQ#What.27s_the_normal_login_sequence_for_a_client.3F
 
@@ -234,14 +239,7 @@ public final class ServerPlayer extends ServerLivingEntity implements Player {
         // Recipe
         // Player Position
 
-        // Player info
-        final EnumSet<PacketPlayOutPlayerInfo.Action> actions = EnumSet.allOf(PacketPlayOutPlayerInfo.Action.class);
-        sendPacket(new PacketPlayOutPlayerInfo(actions, this));
-        for (final Player player : getServer().getEntityManager().getEntitiesOfClass(Player.class)) {
-            if (player == this) continue;
-            sendPacket(new PacketPlayOutPlayerInfo(actions, player));
-            player.sendPacket(new PacketPlayOutPlayerInfo(actions, this));
-        }
+        // Player info (sent before the initialization)
 
         // Set Chunk Cache Center
         // Light Update (One sent for each chunk in a square centered on the player's position)
@@ -253,21 +251,52 @@ public final class ServerPlayer extends ServerLivingEntity implements Player {
 
         // Synchronize Player Position
         synchronizePosition(new EntityPosition(0, 0, 0), EnumSet.allOf(TeleportFlags.class));
-        for (final Player player : getServer().getEntityManager().getEntitiesOfClass(Player.class)) {
-            if (player == this)
-                continue;
-            sendPacket(new PacketPlayOutSpawnPlayer(player.getEntityID(), player.getUUID(), player.getLocation()));
-            sendPacket(new PacketPlayOutHeadRotation(player.getEntityID(), player.getLocation().getYaw()));
-        }
-        for (final PlayerConnection other : others) {
-            other.send(new PacketPlayOutSpawnPlayer(getEntityID(), getUUID(), getLocation()));
-            other.send(new PacketPlayOutHeadRotation(getEntityID(), getLocation().getYaw()));
-        }
 
         // Inventory, entities, etc
+        // Other players are spawned together with the chunks they are in
 
         // Gamemode
         sendGamemodeChange(gamemode);
+
+        // Announcement of the player to the others
+        if (getServer().getPlayerManager() instanceof ServerPlayerManager manager) {
+            manager.announce(this);
+            return;
+        }
+        getServer().getConnection().broadcastPacket(
+                new PacketPlayOutPlayerInfo(EnumSet.allOf(PacketPlayOutPlayerInfo.Action.class), this),
+                connection -> connection.getState().orElse(null) == PlayerConnection.ClientState.PLAY && connection.getOwner().isPresent()
+        );
+        markAnnounced();
+    }
+
+    /**
+     * Marks the player as announced to the other players in the player list,
+     * the player is spawned for the players that can see it.
+     * @see ServerPlayerManager#tick(long)
+     */
+    public void markAnnounced() {
+        announced = true;
+        updateViewers();
+    }
+
+    /**
+     * Players are not spawned for others until they are announced in the
+     * player list, the client can not spawn a player without its player info.
+     * @param player new viewer
+     * @return whether the player has been added
+     */
+    @Override
+    public boolean addViewer(final Player player) {
+        return announced && super.addViewer(player);
+    }
+
+    @Override
+    protected List<Packet> getSpawnPackets(final Location location, final boolean onGround) {
+        return List.of(
+                new PacketPlayOutSpawnPlayer(getEntityID(), getUUID(), location),
+                new PacketPlayOutHeadRotation(getEntityID(), location.getYaw())
+        );
     }
 
     @Override
@@ -299,10 +328,7 @@ public final class ServerPlayer extends ServerLivingEntity implements Player {
     @Override
     public void setPlayerListName(final @Nullable Component playerListName) {
         this.playerListName = playerListName != null ? playerListName : TextComponent.of(getName());
-        getServer().getConnection().broadcastPacket(new PacketPlayOutPlayerInfo(
-                EnumSet.of(PacketPlayOutPlayerInfo.Action.UPDATE_DISPLAY_NAME),
-                this
-        ));
+        updatePlayerInfo(PacketPlayOutPlayerInfo.Action.UPDATE_DISPLAY_NAME);
     }
 
     @Override
@@ -316,19 +342,23 @@ public final class ServerPlayer extends ServerLivingEntity implements Player {
         previousGamemode = this.gamemode;
         this.gamemode = gamemode;
         sendGamemodeChange(gamemode);
-        getServer().getConnection().broadcastPacket(new PacketPlayOutPlayerInfo(
-                EnumSet.of(PacketPlayOutPlayerInfo.Action.UPDATE_GAMEMODE),
-                this
-        ));
+        updatePlayerInfo(PacketPlayOutPlayerInfo.Action.UPDATE_GAMEMODE);
     }
 
     @Override
     public void setListed(final boolean listed) {
         this.listed = listed;
-        getServer().getConnection().broadcastPacket(new PacketPlayOutPlayerInfo(
-                EnumSet.of(PacketPlayOutPlayerInfo.Action.UPDATE_LISTED),
-                this
-        ));
+        updatePlayerInfo(PacketPlayOutPlayerInfo.Action.UPDATE_LISTED);
+    }
+
+    /**
+     * Sends the changed player info of the player to all players.
+     * @param action changed part of the player info
+     */
+    private void updatePlayerInfo(final PacketPlayOutPlayerInfo.Action action) {
+        if (getServer().getPlayerManager() instanceof ServerPlayerManager manager)
+            manager.invalidatePlayerList();
+        getServer().getConnection().broadcastPacket(new PacketPlayOutPlayerInfo(EnumSet.of(action), this));
     }
 
     @Override
@@ -400,6 +430,8 @@ public final class ServerPlayer extends ServerLivingEntity implements Player {
      */
     public void newSession(final ServerChatSession session) {
         this.session = session;
+        if (getServer().getPlayerManager() instanceof ServerPlayerManager manager)
+            manager.invalidatePlayerList();
         for (final Player player : getServer().getPlayers())
             player.sendPacket(new PacketPlayOutPlayerInfo(EnumSet.of(PacketPlayOutPlayerInfo.Action.INITIALIZE_CHAT), this));
     }
@@ -85,6 +85,47 @@ public class ServerPropertiesImpl implements ServerProperties, Configuration {
     private @Range(from = 2, to = 32) int viewDistance = 8;
     @Comment("The distance that the client will process specific things, such as entities")
     private int simulationDistance = 8;
+    @Comment("Whether the native epoll transport should be used on Linux if it's available")
+    private boolean nativeTransport = true;
+    @Comment("Number of threads handling the client connections, 0 for the default (twice the number of processors)")
+    private int networkThreads = 0;
+    @Comment("Whether the packets sent to the players are flushed once per tick instead of after each packet")
+    private boolean tickFlush = true;
+    @Comment({
+            "Number of pending bytes after which the packets are flushed before the end of the tick",
+            "If the value is 0 then the packets are flushed only at the end of the tick"
+    })
+    private int flushThreshold = 64 * 1024;
+    @Comment("Size of packets in bytes from which they are compressed, 0 to compress all packets, -1 to disable the compression")
+    private int compressionThreshold = 256;
+    @Comment("Zlib compression level of compressed packets (0-9), -1 for the default level")
+    private @Range(from = -1, to = 9) int compressionLevel = -1;
+    @Comment("Maximum number of chunks sent to a single player each tick")
+    private int chunksPerTick = 16;
+    @Comment({
+            "Number of threads running the packet translators offloaded from the network threads",
+            "If the value is 0 then the translators are run on virtual threads"
+    })
+    private int translatorThreads = 0;
+    @Comment("Whether the worlds are saved automatically")
+    private boolean autoSave = true;
+    @Comment({
+            "Interval in seconds after which a changed region of a world is saved",
+            "Changes made to the region in the meantime are saved together"
+    })
+    private int autoSaveInterval = 300;
+    @Comment({
+            "Maximum amount of data in MB written by the auto save each second",
+            "If the value is 0 then the auto save is not limited"
+    })
+    private int autoSaveThroughput = 16;
+    @Comment("Whether generated chunks that have not been changed yet are saved")
+    private boolean saveGeneratedChunks = true;
+    @Comment({
+            "Number of changed segments of a region after which the region is saved immediately",
+            "If the value is 0 then the regions are saved only in the auto save interval"
+    })
+    private int autoSaveLimit = 0;
     @Comment({
             "How often the server reads incoming packets in milliseconds",
             "If the value is 0 then the server will read the packets once every tick"
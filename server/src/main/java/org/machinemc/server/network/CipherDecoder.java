@@ -21,10 +21,14 @@ import lombok.AllArgsConstructor;
 import org.machinemc.server.exception.ClientException;
 
 import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
 import java.util.List;
 
 /**
  * Channel handler that decrypts incoming packets.
+ * <p>
+ * The data are decrypted straight from the input buffer into a heap output
+ * buffer, so the cipher can work on its backing array.
  */
 @AllArgsConstructor
 public class CipherDecoder extends ByteToMessageDecoder {
@@ -32,17 +36,25 @@ public class CipherDecoder extends ByteToMessageDecoder {
     private final ClientConnection connection;
 
     @Override
-    protected void decode(final ChannelHandlerContext ctx, final ByteBuf msg, final List<Object> out) {
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf msg, final List<Object> out) throws ShortBufferException {
         if (connection.encryptionContext == null) {
-            out.add(msg.readBytes(msg.readableBytes()));
+            out.add(msg.readRetainedSlice(msg.readableBytes()));
             return;
         }
 
         final Cipher cipher = connection.encryptionContext.decrypt();
-        final byte[] data = new byte[msg.readableBytes()];
-        msg.readBytes(data);
-        final ByteBuf output = ctx.alloc().buffer(cipher.getOutputSize(msg.readableBytes()));
-        output.writeBytes(cipher.update(data));
+        final int length = msg.readableBytes();
+        final ByteBuf output = ctx.alloc().heapBuffer(cipher.getOutputSize(length));
+        try {
+            final int written = cipher.update(
+                    msg.nioBuffer(msg.readerIndex(), length),
+                    output.nioBuffer(0, output.capacity()));
+            output.writerIndex(written);
+        } catch (Throwable throwable) {
+            output.release();
+            throw throwable;
+        }
+        msg.skipBytes(length);
         out.add(output);
     }
 
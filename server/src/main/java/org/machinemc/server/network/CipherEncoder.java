@@ -17,27 +17,41 @@ package org.machinemc.server.network;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
-import lombok.AllArgsConstructor;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import java.util.Objects;
 
 /**
  * Channel handler that encrypts outgoing packets.
+ * <p>
+ * The data are encrypted straight from the input buffer into the output buffer,
+ * output buffers are heap buffers so the cipher can work on their backing arrays.
  */
-@AllArgsConstructor
 public class CipherEncoder extends MessageToByteEncoder<ByteBuf> {
 
     private final ClientConnection connection;
 
+    public CipherEncoder(final ClientConnection connection) {
+        super(false);
+        this.connection = Objects.requireNonNull(connection, "Connection can not be null");
+    }
+
     @Override
-    protected void encode(final ChannelHandlerContext ctx, final ByteBuf msg, final ByteBuf out) {
+    protected void encode(final ChannelHandlerContext ctx, final ByteBuf msg, final ByteBuf out) throws ShortBufferException {
         if (connection.encryptionContext == null) {
             out.writeBytes(msg);
             return;
         }
 
-        final byte[] data = new byte[msg.readableBytes()];
-        msg.readBytes(data);
-        final byte[] encrypted = connection.encryptionContext.encrypt().update(data);
-        out.writeBytes(encrypted);
+        final Cipher cipher = connection.encryptionContext.encrypt();
+        final int length = msg.readableBytes();
+        out.ensureWritable(cipher.getOutputSize(length));
+        final int written = cipher.update(
+                msg.nioBuffer(msg.readerIndex(), length),
+                out.nioBuffer(out.writerIndex(), out.writableBytes()));
+        msg.skipBytes(length);
+        out.writerIndex(out.writerIndex() + written);
     }
 
 }
@@ -14,9 +14,12 @@
  */
 package org.machinemc.server.network;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelPromise;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.Synchronized;
@@ -29,23 +32,36 @@ import org.machinemc.api.server.schedule.Scheduler;
 import org.machinemc.scriptive.components.Component;
 import org.machinemc.server.Machine;
 import org.machinemc.server.entities.ServerPlayer;
+import org.machinemc.server.network.packets.SharedPacket;
 import org.machinemc.server.network.packets.out.login.PacketLoginOutDisconnect;
 import org.machinemc.server.network.packets.out.login.PacketLoginOutSetCompression;
+import org.machinemc.server.network.packets.out.login.PacketLoginOutSuccess;
 import org.machinemc.server.network.packets.out.play.PacketPlayOutBundleDelimiter;
 import org.machinemc.server.network.packets.out.play.PacketPlayOutDisconnect;
 import org.machinemc.server.network.packets.out.play.PacketPlayOutKeepAlive;
+import org.machinemc.server.translation.TranslatorDispatcher;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import java.net.InetSocketAddress;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * Player connection implementation using netty.
  */
 public class ClientConnection implements PlayerConnection {
 
+    /**
+     * Packets that are always flushed immediately, even if the packets are flushed once per tick.
+     */
+    private static final Set<Class<? extends Packet>> URGENT_PACKETS = Set.of(
+            PacketPlayOutKeepAlive.class,
+            PacketPlayOutDisconnect.class
+    );
+
     @Getter
     private final NettyServer nettyServer;
     @Getter
@@ -55,6 +71,8 @@ public class ClientConnection implements PlayerConnection {
     private final Channel channel;
     @Getter
     private final InetSocketAddress address;
+    @Getter(AccessLevel.PACKAGE)
+    private final PacketInbox inbox;
 
     @Setter
     private @Nullable String loginUsername;
@@ -62,7 +80,7 @@ public class ClientConnection implements PlayerConnection {
     private @Nullable ServerPlayer owner;
 
     @Getter
-    private int compressionThreshold = -1;
+    private volatile int compressionThreshold = -1;
 
     private @Nullable SecretKey secretKey;
     protected EncryptionContext encryptionContext;
@@ -72,12 +90,11 @@ public class ClientConnection implements PlayerConnection {
     private long keepAliveRequest;
     private long keepAliveResponse;
 
-    private boolean waitingForBundle = false;
-
     public ClientConnection(final NettyServer nettyServer, final Channel channel) {
         this.nettyServer = nettyServer;
         this.channel = channel;
         this.address = (InetSocketAddress) channel.remoteAddress();
+        inbox = new PacketInbox(this, channel);
         server = nettyServer.getServer();
         setState(ClientState.HANDSHAKE);
         channel.closeFuture().addListener(future -> {
@@ -90,50 +107,138 @@ public class ClientConnection implements PlayerConnection {
     }
 
     @Override
-    @Synchronized
     public ChannelFuture send(final Packet packet) {
-        if (!channel.isOpen())
-            throw new IllegalStateException("The channel is closed");
+        validate(packet);
+        if (packet instanceof SharedPacket shared
+                && state == ClientState.PLAY
+                && !server.getTranslatorDispatcher().isConnectionSpecific(packet))
+            return sendFramed(packet, shared.getFrame(getFrameThreshold(), server.getProperties().getCompressionLevel()));
+        return write(packet, !isBatched(packet), channel.newPromise());
+    }
 
-        if (!Packet.PacketState.out().contains(packet.getPacketState()))
-            throw new UnsupportedOperationException("Packets of type "
-                    + packet.getPacketState()
-                    + " can not be sent to the client");
+    /**
+     * Sends a packet encoded ahead of time to the client, the translators
+     * of the packet are called as if the packet was sent normally.
+     * @param packet packet the frame has been encoded from
+     * @param frame encoded frame in the format of this connection, it is not released by this method
+     * @return channel future
+     * @see FramedPacket
+     */
+    ChannelFuture sendFramed(final Packet packet, final ByteBuf frame) {
+        validate(packet);
+        final TranslatorDispatcher dispatcher = server.getTranslatorDispatcher();
+        final boolean translated = dispatcher.hasTranslators(packet);
+        try {
+            if (translated && !dispatcher.playOut(this, packet))
+                return channel.newSucceededFuture();
+            final ChannelFuture future = write(new FramedPacket(frame.retainedDuplicate()), !isBatched(packet), channel.newPromise());
+            if (translated) dispatcher.playOutAfter(this, packet);
+            return future;
+        } catch (Exception exception) {
+            return channel.newFailedFuture(exception);
+        }
+    }
 
-        if (!waitingForBundle
-                && getState().orElse(null) == ClientState.PLAY
-                && packet.getID() == PacketPlayOutBundleDelimiter.ID)
-            throw new UnsupportedOperationException("Bundle Delimiter packets can not be sent individually");
+    /**
+     * @return compression threshold of the frames sent to this connection, -1 if compression is disabled
+     */
+    int getFrameThreshold() {
+        return isCompressed() ? compressionThreshold : -1;
+    }
 
-        final ChannelFuture channelfuture = channel.writeAndFlush(packet);
-        channelfuture.addListener((ChannelFutureListener) future -> {
-            if (future.cause() == null) return;
-            if (!future.channel().isOpen()) return;
-            server.getExceptionHandler().handle(future.cause());
-        });
-        return channelfuture;
+    /**
+     * Sends a packet to the client and flushes the connection immediately,
+     * bypassing the per tick batching.
+     * @param packet packet to send
+     * @return channel future
+     */
+    public ChannelFuture sendImmediately(final Packet packet) {
+        validate(packet);
+        return write(packet, true, channel.newPromise());
     }
 
     @Override
     public Optional<ChannelFuture> send(final Packet... packets) {
         if (!channel.isOpen())
             throw new IllegalStateException("The channel is closed");
+        for (final Packet packet : packets) validate(packet);
 
         if (getState().orElse(null) != ClientState.PLAY) {
             for (final Packet packet : packets) send(packet);
             return Optional.empty();
         }
 
-        sendDelimiter();
-        for (final Packet packet : packets) send(packet);
-        return Optional.of(sendDelimiter());
+        // bundle is written as a single task on the event loop, so it
+        // can not be interleaved with packets sent from other threads
+        final ChannelPromise promise = channel.newPromise();
+        final boolean flush = !nettyServer.getServer().getProperties().isTickFlush();
+        final Runnable bundle = () -> {
+            write(new PacketPlayOutBundleDelimiter(), false, channel.voidPromise());
+            for (final Packet packet : packets)
+                write(packet, false, channel.voidPromise());
+            write(new PacketPlayOutBundleDelimiter(), flush, promise);
+        };
+        if (channel.eventLoop().inEventLoop())
+            bundle.run();
+        else
+            channel.eventLoop().execute(bundle);
+        return Optional.of(promise);
     }
 
-    private ChannelFuture sendDelimiter() {
-        waitingForBundle = true;
-        final ChannelFuture future = send(new PacketPlayOutBundleDelimiter());
-        waitingForBundle = false;
-        return future;
+    /**
+     * Flushes all packets that have been written to the connection
+     * but not yet sent to the client.
+     */
+    public void flush() {
+        if (!channel.isOpen()) return;
+        channel.flush();
+    }
+
+    /**
+     * Checks whether the packet can be sent to the client.
+     * @param packet packet to check
+     */
+    private void validate(final Packet packet) {
+        if (!channel.isOpen())
+            throw new IllegalStateException("The channel is closed");
+
+        if (!Packet.PacketState.out().contains(packet.getPacketState()))
+            throw new UnsupportedOperationException("Packets of type "
+                    + packet.getPacketState()
+                    + " can not be sent to the client");
+
+        if (getState().orElse(null) == ClientState.PLAY && packet.getID() == PacketPlayOutBundleDelimiter.ID)
+            throw new UnsupportedOperationException("Bundle Delimiter packets can not be sent individually");
+    }
+
+    /**
+     * Whether the packet should be only written to the connection and flushed
+     * at the end of the tick.
+     * @param packet packet
+     * @return whether the packet is batched
+     */
+    private boolean isBatched(final Packet packet) {
+        if (state != ClientState.PLAY) return false;
+        if (URGENT_PACKETS.contains(packet.getClass())) return false;
+        return nettyServer.getServer().getProperties().isTickFlush();
+    }
+
+    /**
+     * Writes the packet to the channel.
+     * @param packet packet or framed packet to write
+     * @param flush whether the channel should be flushed
+     * @param promise promise of the write
+     * @return channel future
+     */
+    private ChannelFuture write(final Object packet, final boolean flush, final ChannelPromise promise) {
+        final ChannelFuture channelfuture = flush ? channel.writeAndFlush(packet, promise) : channel.write(packet, promise);
+        if (promise.isVoid()) return channelfuture;
+        channelfuture.addListener((ChannelFutureListener) future -> {
+            if (future.cause() == null) return;
+            if (!future.channel().isOpen()) return;
+            server.getExceptionHandler().handle(future.cause());
+        });
+        return channelfuture;
     }
 
     @Override
@@ -173,26 +278,60 @@ public class ClientConnection implements PlayerConnection {
 
     /**
      * Sets the compression of this client connection.
+     * <p>
+     * The set compression packet is written and the threshold changed in a single
+     * task on the event loop, so the packet itself is sent uncompressed and all packets
+     * written after it are compressed, without waiting for the packet to be flushed.
      * @param threshold compression threshold
-     * @return whether the operation was successful
+     * @return future of the set compression packet
      */
-    public boolean setCompression(final int threshold) {
+    public ChannelFuture setCompression(final int threshold) {
         if (state != ClientState.LOGIN) throw new UnsupportedOperationException();
-        try {
-            if (!send(new PacketLoginOutSetCompression(threshold)).sync().isSuccess())
-                return false;
+        final PacketLoginOutSetCompression packet = new PacketLoginOutSetCompression(threshold);
+        validate(packet);
+        final ChannelPromise promise = channel.newPromise();
+        final Runnable task = () -> {
+            write(packet, true, promise);
             compressionThreshold = threshold;
+        };
+        if (channel.eventLoop().inEventLoop())
+            task.run();
+        else
+            channel.eventLoop().execute(task);
+        return promise;
+    }
+
+    /**
+     * Sends the login success packet and switches the connection to the {@link ClientState#PLAY} state.
+     * <p>
+     * The packet is written and the state changed in a single task on the event loop, so the packet
+     * itself is encoded in the login state and all packets received after it are decoded in the play state.
+     * The calling thread waits until the state is changed.
+     * @param packet login success packet
+     * @return whether the state has been changed, false if the client has disconnected
+     */
+    public boolean completeLogin(final PacketLoginOutSuccess packet) {
+        if (state != ClientState.LOGIN) throw new UnsupportedOperationException();
+        validate(packet);
+        final Callable<Boolean> task = () -> {
+            write(packet, true, channel.newPromise());
+            if (state == ClientState.DISCONNECTED) return false;
+            setState(ClientState.PLAY);
             return true;
-        } catch (InterruptedException exception) {
-            throw new RuntimeException(exception);
+        };
+        try {
+            if (channel.eventLoop().inEventLoop()) return task.call();
+            return channel.eventLoop().submit(task).syncUninterruptibly().getNow();
+        } catch (Exception exception) {
+            throw new IllegalStateException(exception);
         }
     }
 
     /**
      * Disables the compression of this client connection.
-     * @return whether the operation was successful
+     * @return future of the set compression packet
      */
-    public boolean disableCompression() {
+    public ChannelFuture disableCompression() {
         return setCompression(-1);
     }
 
@@ -200,7 +339,7 @@ public class ClientConnection implements PlayerConnection {
      * @return whether the client connection is compressed
      */
     public boolean isCompressed() {
-        return compressionThreshold > 0;
+        return compressionThreshold >= 0;
     }
 
     /**
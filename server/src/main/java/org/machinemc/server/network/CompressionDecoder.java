@@ -17,44 +17,94 @@ package org.machinemc.server.network;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
-import lombok.AllArgsConstructor;
+import io.netty.handler.codec.DecoderException;
+import org.jetbrains.annotations.Nullable;
 import org.machinemc.api.utils.FriendlyByteBuf;
-import org.machinemc.server.utils.ZLib;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
  * Channel handler that decompresses incoming packets.
+ * <p>
+ * Each connection has its own inflater that is reused for all its packets,
+ * the data are decompressed straight from the input buffer into the output buffer.
  */
-@AllArgsConstructor
 public class CompressionDecoder extends ByteToMessageDecoder {
 
+    /**
+     * Maximum size of a decompressed packet.
+     */
+    public static final int MAX_LENGTH = 8 * 1024 * 1024;
+
     private final ClientConnection connection;
+    private @Nullable Inflater inflater;
+
+    public CompressionDecoder(final ClientConnection connection) {
+        this.connection = Objects.requireNonNull(connection, "Connection can not be null");
+    }
 
     @Override
-    protected void decode(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out) {
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out) throws DataFormatException {
         if (!connection.isCompressed()) {
-            out.add(in.readBytes(in.readableBytes()));
+            out.add(in.readRetainedSlice(in.readableBytes()));
             return;
         }
 
-        final FriendlyByteBuf buf = new FriendlyByteBuf(in);
-        final int length = buf.readVarInt();
+        final int length = new FriendlyByteBuf(in).readVarInt();
 
         // Is not compressed
         if (length == 0) {
-            out.add(in.readBytes(in.readableBytes()));
+            out.add(in.readRetainedSlice(in.readableBytes()));
             return;
         }
 
+        if (length < connection.getCompressionThreshold() || length > MAX_LENGTH)
+            throw new DecoderException("Invalid length of compressed packet: " + length);
+
+        final ByteBuf output = ctx.alloc().buffer(length);
+        try {
+            inflate(in, output, length);
+        } catch (Throwable throwable) {
+            output.release();
+            throw throwable;
+        }
+        out.add(output);
+    }
+
+    /**
+     * Decompresses all readable bytes of the source buffer into the target buffer.
+     * @param source source buffer
+     * @param target target buffer
+     * @param length expected length of the decompressed data
+     * @throws DataFormatException if the compressed data are invalid
+     */
+    private void inflate(final ByteBuf source, final ByteBuf target, final int length) throws DataFormatException {
+        if (inflater == null)
+            inflater = new Inflater();
         try {
-            final byte[] uncompressed = ZLib.decompress(buf.readBytes(buf.readableBytes()));
-            final ByteBuf output = ctx.alloc().buffer(length);
-            output.writeBytes(uncompressed);
-            out.add(output);
-        } catch (IOException exception) {
-            throw new RuntimeException(exception);
+            inflater.setInput(source.nioBuffer());
+            final ByteBuffer buffer = target.nioBuffer(target.writerIndex(), length);
+            while (buffer.hasRemaining() && !inflater.finished() && !inflater.needsInput())
+                inflater.inflate(buffer);
+            final int inflated = length - buffer.remaining();
+            if (inflated != length || !inflater.finished())
+                throw new DecoderException("Decompressed packet has invalid length, expected " + length + " bytes");
+            target.writerIndex(target.writerIndex() + inflated);
+            source.skipBytes(source.readableBytes());
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    @Override
+    protected void handlerRemoved0(final ChannelHandlerContext ctx) {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
         }
     }
 
@@ -17,19 +17,32 @@ package org.machinemc.server.network;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
-import lombok.AllArgsConstructor;
+import org.jetbrains.annotations.Nullable;
 import org.machinemc.api.utils.FriendlyByteBuf;
-import org.machinemc.server.utils.ZLib;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.zip.Deflater;
 
 /**
  * Channel handler that compresses outgoing packets.
+ * <p>
+ * Each connection has its own deflater that is reused for all its packets,
+ * the data are compressed straight from the input buffer into the output buffer.
  */
-@AllArgsConstructor
 public class CompressionEncoder extends MessageToByteEncoder<ByteBuf> {
 
+    /**
+     * Minimum number of writable bytes ensured in the output buffer for each deflate call.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
     private final ClientConnection connection;
+    private @Nullable Deflater deflater;
+
+    public CompressionEncoder(final ClientConnection connection) {
+        this.connection = Objects.requireNonNull(connection, "Connection can not be null");
+    }
 
     @Override
     protected void encode(final ChannelHandlerContext ctx, final ByteBuf msg, final ByteBuf out) {
@@ -37,27 +50,66 @@ public class CompressionEncoder extends MessageToByteEncoder<ByteBuf> {
             out.writeBytes(msg);
             return;
         }
+        if (deflater == null)
+            deflater = new Deflater(connection.getServer().getProperties().getCompressionLevel());
+        compress(msg, out, connection.getCompressionThreshold(), deflater);
+    }
 
-        final FriendlyByteBuf buf = new FriendlyByteBuf(msg);
-        final int length = buf.readVarInt();
-
-        final FriendlyByteBuf data = new FriendlyByteBuf();
+    /**
+     * Converts a packet frame to the compressed format.
+     * @param msg packet prefixed with its length
+     * @param out output buffer
+     * @param threshold compression threshold
+     * @param deflater deflater used for packets over the threshold
+     */
+    static void compress(final ByteBuf msg, final ByteBuf out, final int threshold, final Deflater deflater) {
+        new FriendlyByteBuf(msg).readVarInt(); // length of the uncompressed packet, same as readable bytes
+        final int length = msg.readableBytes();
         final FriendlyByteBuf output = new FriendlyByteBuf(out);
 
-        if (length < connection.getCompressionThreshold()) {
-            data.writeVarInt(0).writeBytes(buf.readBytes(buf.readableBytes()));
-            output.writeVarInt(data.readableBytes()).writeBytes(data.readBytes(data.readableBytes()));
+        if (length < threshold) {
+            output.writeVarInt(length + 1) // + 1 byte for the data length
+                    .writeVarInt(0);
+            out.writeBytes(msg);
             return;
         }
 
-        try {
-            final byte[] compressed = ZLib.compress(buf.readBytes(buf.readableBytes()));
-            data.writeVarInt(length).writeBytes(compressed);
-            output.writeVarInt(data.writerIndex()).writeBytes(data.readBytes(data.readableBytes()));
-        } catch (IOException exception) {
-            throw new RuntimeException(exception);
+        final int start = out.writerIndex();
+        out.writeMedium(0); // placeholder for the length
+        output.writeVarInt(length);
+        deflate(msg, out, deflater);
+
+        final int compressedLength = out.writerIndex() - start - PacketEncoder.LENGTH_BYTES;
+        if (compressedLength > PacketEncoder.MAX_LENGTH)
+            throw new IllegalStateException("Compressed packet is too large (" + compressedLength + " bytes)");
+        out.setMedium(start, PacketEncoder.paddedVarInt(compressedLength));
+    }
+
+    /**
+     * Compresses all readable bytes of the source buffer into the target buffer.
+     * @param source source buffer
+     * @param target target buffer
+     * @param deflater deflater to use, it is reset afterwards
+     */
+    private static void deflate(final ByteBuf source, final ByteBuf target, final Deflater deflater) {
+        deflater.setInput(source.nioBuffer());
+        deflater.finish();
+        while (!deflater.finished()) {
+            target.ensureWritable(CHUNK_SIZE);
+            final ByteBuffer buffer = target.nioBuffer(target.writerIndex(), target.writableBytes());
+            target.writerIndex(target.writerIndex() + deflater.deflate(buffer));
         }
+        deflater.reset();
+        source.skipBytes(source.readableBytes());
+    }
 
+    @Override
+    public void handlerRemoved(final ChannelHandlerContext ctx) throws Exception {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        super.handlerRemoved(ctx);
     }
 
 }
@@ -0,0 +1,55 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Channel handler that flushes the connection once the size of the written
+ * but not yet flushed data exceeds the budget, so batched packets are not held
+ * back until the end of the tick when a lot of data is sent.
+ */
+public class FlushBudgetHandler extends ChannelOutboundHandlerAdapter {
+
+    private final int budget;
+    private int pending;
+
+    /**
+     * @param budget number of pending bytes after which the connection is flushed,
+     *               0 or less to flush only when requested
+     */
+    public FlushBudgetHandler(final int budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) {
+        if (msg instanceof ByteBuf buf)
+            pending += buf.readableBytes();
+        ctx.write(msg, promise);
+        if (budget > 0 && pending >= budget)
+            flush(ctx);
+    }
+
+    @Override
+    public void flush(final ChannelHandlerContext ctx) {
+        pending = 0;
+        ctx.flush();
+    }
+
+}
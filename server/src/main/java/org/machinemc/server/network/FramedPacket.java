@@ -0,0 +1,95 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.buffer.Unpooled;
+import org.machinemc.api.network.packets.Packet;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Packet encoded ahead of time into a complete frame, the frame is already
+ * prefixed with its length and compressed in the format of the connection,
+ * only the encryption is applied to it in the pipeline.
+ * <p>
+ * Frames let a packet sent to multiple clients be serialized and compressed only once,
+ * each connection then receives a retained duplicate of the same buffer.
+ * <p>
+ * Deflaters used for the frames are shared by all threads in a bounded pool, so
+ * short-lived threads encoding the frames do not allocate their own zlib contexts.
+ */
+public class FramedPacket extends DefaultByteBufHolder {
+
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    public FramedPacket(final ByteBuf frame) {
+        super(frame);
+    }
+
+    /**
+     * Encodes a packet into a frame.
+     * <p>
+     * Frames are allocated on the heap outside the pooled allocator, so frames
+     * kept by cached packets can be left to the garbage collector.
+     * @param packet packet to encode
+     * @param compressionThreshold compression threshold of the connections, -1 if compression is disabled
+     * @param compressionLevel zlib compression level
+     * @return encoded frame
+     */
+    public static ByteBuf encode(final Packet packet, final int compressionThreshold, final int compressionLevel) {
+        final ByteBuf frame = Unpooled.buffer();
+        PacketEncoder.writeFrame(packet, frame);
+        if (compressionThreshold < 0) return frame;
+        try {
+            final ByteBuf compressed = Unpooled.buffer(frame.readableBytes());
+            final Deflater deflater = acquireDeflater();
+            try {
+                deflater.setLevel(compressionLevel);
+                CompressionEncoder.compress(frame, compressed, compressionThreshold, deflater);
+            } catch (Throwable throwable) {
+                compressed.release();
+                throw throwable;
+            } finally {
+                releaseDeflater(deflater);
+            }
+            return compressed;
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Takes a deflater from the pool, creates new one if the pool is empty.
+     * @return deflater
+     */
+    private static Deflater acquireDeflater() {
+        final Deflater deflater = DEFLATERS.poll();
+        return deflater != null ? deflater : new Deflater();
+    }
+
+    /**
+     * Returns a deflater to the pool, deflaters that do not fit in the pool are ended.
+     * @param deflater deflater
+     */
+    private static void releaseDeflater(final Deflater deflater) {
+        deflater.reset();
+        if (!DEFLATERS.offer(deflater)) deflater.end();
+    }
+
+}
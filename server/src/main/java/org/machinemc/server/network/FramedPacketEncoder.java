@@ -0,0 +1,33 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.network;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+
+/**
+ * Channel handler that passes frames of packets encoded ahead of time
+ * to the cipher encoder, skipping the packet and compression encoders.
+ */
+public class FramedPacketEncoder extends MessageToMessageEncoder<FramedPacket> {
+
+    @Override
+    protected void encode(final ChannelHandlerContext ctx, final FramedPacket msg, final List<Object> out) {
+        out.add(msg.content().retain());
+    }
+
+}
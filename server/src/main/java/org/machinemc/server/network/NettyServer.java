@@ -15,10 +15,16 @@
 package org.machinemc.server.network;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -28,9 +34,12 @@ import org.machinemc.api.network.ServerConnection;
 import org.machinemc.api.network.packets.Packet;
 import org.machinemc.scriptive.components.TranslationComponent;
 import org.machinemc.server.Machine;
+import org.machinemc.server.tick.Tickable;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -40,13 +49,26 @@ import java.util.function.Predicate;
 /**
  * Server connection implementation using netty.
  */
-public class NettyServer implements ServerConnection {
+public class NettyServer implements ServerConnection, Tickable {
 
     public static final int READ_IDLE_TIMEOUT = 30000;
     public static final int KEEP_ALIVE_FREQ = 20000;
 
-    private final EventLoopGroup bossGroup = new NioEventLoopGroup();
-    private final EventLoopGroup workerGroup = new NioEventLoopGroup();
+    /**
+     * Size of the pending outgoing data in bytes after which the channel becomes writable again.
+     */
+    public static final int WRITE_BUFFER_LOW_WATER_MARK = 1 << 20;
+
+    /**
+     * Size of the pending outgoing data in bytes after which the channel stops being writable.
+     */
+    public static final int WRITE_BUFFER_HIGH_WATER_MARK = 2 << 20;
+
+    private final EventLoopGroup bossGroup;
+    private final EventLoopGroup workerGroup;
+    private final Class<? extends ServerSocketChannel> channelClass;
+    @Getter
+    private final boolean nativeTransport;
     private @Nullable ChannelFuture bindFuture;
 
     @Getter
@@ -64,6 +86,18 @@ public class NettyServer implements ServerConnection {
         this.server = Objects.requireNonNull(server, "Server can not be null");
         this.ip = server.getIP();
         this.port = server.getServerPort();
+
+        nativeTransport = server.getProperties().isNativeTransport() && Epoll.isAvailable();
+        final int threads = Math.max(0, server.getProperties().getNetworkThreads());
+        if (nativeTransport) {
+            bossGroup = new EpollEventLoopGroup(1);
+            workerGroup = new EpollEventLoopGroup(threads);
+            channelClass = EpollServerSocketChannel.class;
+        } else {
+            bossGroup = new NioEventLoopGroup(1);
+            workerGroup = new NioEventLoopGroup(threads);
+            channelClass = NioServerSocketChannel.class;
+        }
     }
 
     @Override
@@ -86,10 +120,14 @@ public class NettyServer implements ServerConnection {
     public ChannelFuture start() {
         final ServerBootstrap bootstrap = new ServerBootstrap();
         bootstrap.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(channelClass)
                 .childHandler(new Initializer())
                 .option(ChannelOption.SO_BACKLOG, 128)
-                .childOption(ChannelOption.SO_KEEPALIVE, true);
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                        new WriteBufferWaterMark(WRITE_BUFFER_LOW_WATER_MARK, WRITE_BUFFER_HIGH_WATER_MARK));
+        server.getConsole().info("Using " + (nativeTransport ? "epoll" : "nio") + " channel transport");
         bindFuture = bootstrap.bind(getIP(), getPort()).addListener(future -> {
             if (future.isSuccess()) running = true;
         });
@@ -107,18 +145,75 @@ public class NettyServer implements ServerConnection {
 
     @Override
     public void broadcastPacket(final Packet packet) {
-        Objects.requireNonNull(packet, "Packet can not be null");
-        getClients().forEach(connection -> connection.send(packet));
+        broadcastPacket(packet, getClients());
     }
 
     @Override
     public void broadcastPacket(final Packet packet, final Predicate<PlayerConnection> predicate) {
-        Objects.requireNonNull(packet, "Packet can not be null");
         Objects.requireNonNull(predicate);
-        getClients().forEach(connection -> {
-            if (predicate.test(connection))
-                connection.send(packet);
-        });
+        final List<PlayerConnection> targets = new ArrayList<>();
+        for (final PlayerConnection connection : connections) {
+            if (predicate.test(connection)) targets.add(connection);
+        }
+        broadcastPacket(packet, targets);
+    }
+
+    /**
+     * Sends a packet to multiple clients.
+     * <p>
+     * The packet is serialized and compressed only once, each client in the play state
+     * receives a retained duplicate of the same frame and only the encryption is done
+     * for each client separately. Packets with connection specific translators are
+     * encoded for each client.
+     * @param packet packet to send
+     * @param targets connections to send the packet to
+     */
+    @Override
+    public void broadcastPacket(final Packet packet, final Iterable<? extends PlayerConnection> targets) {
+        Objects.requireNonNull(packet, "Packet can not be null");
+        Objects.requireNonNull(targets, "Targets can not be null");
+        final boolean connectionSpecific = server.getTranslatorDispatcher().isConnectionSpecific(packet);
+        final int compressionLevel = server.getProperties().getCompressionLevel();
+        ByteBuf plain = null;
+        ByteBuf compressed = null;
+        int compressedThreshold = -1;
+        try {
+            for (final PlayerConnection target : targets) {
+                if (!target.isOpen()) continue;
+                if (connectionSpecific
+                        || !(target instanceof ClientConnection connection)
+                        || connection.getState().orElse(null) != PlayerConnection.ClientState.PLAY) {
+                    target.send(packet);
+                    continue;
+                }
+                final int threshold = connection.getFrameThreshold();
+                if (threshold < 0) {
+                    if (plain == null) plain = FramedPacket.encode(packet, -1, compressionLevel);
+                    connection.sendFramed(packet, plain);
+                } else if (compressed == null || compressedThreshold == threshold) {
+                    if (compressed == null) {
+                        compressed = FramedPacket.encode(packet, threshold, compressionLevel);
+                        compressedThreshold = threshold;
+                    }
+                    connection.sendFramed(packet, compressed);
+                } else {
+                    connection.send(packet);
+                }
+            }
+        } finally {
+            if (plain != null) plain.release();
+            if (compressed != null) compressed.release();
+        }
+    }
+
+    /**
+     * Flushes the output of all connections produced during the tick.
+     * @param tick number of the current tick
+     */
+    @Override
+    public void tick(final long tick) {
+        for (final ClientConnection connection : connections)
+            connection.flush();
     }
 
     @Override
@@ -138,6 +233,10 @@ public class NettyServer implements ServerConnection {
             final ClientConnection connection = new ClientConnection(NettyServer.this, ch);
             ch.config().setKeepAlive(true);
             ch.pipeline().addLast(
+                    // Coalesces flushes of the outgoing packets into fewer syscalls
+                    new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true),
+                    // Flushes the packets batched for the tick early if too much data is pending
+                    new FlushBudgetHandler(server.getProperties().getFlushThreshold()),
                     // Decoding
                     // Cipher -> Length -> Compression -> Packet -> SERVER
                     new CipherDecoder(connection),
@@ -147,6 +246,7 @@ public class NettyServer implements ServerConnection {
                     // Encoding
                     // CLIENT <- Cipher <- Compression <- Packet
                     new CipherEncoder(connection),
+                    new FramedPacketEncoder(), // frames encoded ahead of time skip the compression
                     new CompressionEncoder(connection),
                     new PacketEncoder(connection)
             );
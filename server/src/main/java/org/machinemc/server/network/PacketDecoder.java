@@ -23,7 +23,6 @@ import org.machinemc.api.network.packets.Packet;
 import org.machinemc.api.utils.FriendlyByteBuf;
 import org.machinemc.server.exception.ClientException;
 import org.machinemc.server.network.packets.PacketFactory;
-import org.machinemc.server.translation.TranslatorDispatcher;
 
 import java.util.List;
 
@@ -44,20 +43,14 @@ public class PacketDecoder extends ByteToMessageDecoder {
         final FriendlyByteBuf buf = new FriendlyByteBuf(in);
         final Packet packet;
         try {
-            packet = PacketFactory.produce(PacketFactory.getPacketByRawID(
-                    buf.readVarInt(),
-                    packetState
-            ).orElse(null), buf).orElse(null);
-            buf.finish();
+            packet = PacketFactory.produce(buf.readVarInt(), packetState, buf);
+            in.skipBytes(in.readableBytes());
             if (packet == null) return;
         } catch (Throwable throwable) {
             return;
         }
 
-        final TranslatorDispatcher dispatcher = connection.getServer().getTranslatorDispatcher();
-
-        if (!dispatcher.playIn(connection, packet)) return;
-        dispatcher.playInAfter(connection, packet);
+        connection.getInbox().offer(packet);
     }
 
     @Override
@@ -20,14 +20,28 @@ import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.AllArgsConstructor;
 import org.machinemc.api.network.PlayerConnection;
 import org.machinemc.api.network.packets.Packet;
+import org.machinemc.api.utils.FriendlyByteBuf;
 import org.machinemc.server.translation.TranslatorDispatcher;
 
 /**
  * Channel handler that encodes outgoing packets to bytes.
+ * <p>
+ * Packets are written straight into the output buffer provided by netty,
+ * the length of the packet is back-patched as a var int padded to 3 bytes once the packet is written.
  */
 @AllArgsConstructor
 public class PacketEncoder extends MessageToByteEncoder<Packet> {
 
+    /**
+     * Number of bytes reserved for the length of the packet.
+     */
+    public static final int LENGTH_BYTES = 3;
+
+    /**
+     * Maximum length of a packet that fits into the reserved bytes.
+     */
+    public static final int MAX_LENGTH = (1 << (7 * LENGTH_BYTES)) - 1;
+
     private final ClientConnection connection;
 
     @Override
@@ -37,10 +51,41 @@ public class PacketEncoder extends MessageToByteEncoder<Packet> {
         assert packetState != null;
 
         final TranslatorDispatcher dispatcher = connection.getServer().getTranslatorDispatcher();
-        if (!dispatcher.playOut(connection, msg)) return;
-        dispatcher.playOutAfter(connection, msg);
+        if (dispatcher.hasTranslators(msg)) {
+            if (!dispatcher.playOut(connection, msg)) return;
+            dispatcher.playOutAfter(connection, msg);
+        }
+
+        writeFrame(msg, out);
+    }
+
+    /**
+     * Writes a packet prefixed with its length into a buffer.
+     * @param packet packet to write
+     * @param out output buffer
+     */
+    static void writeFrame(final Packet packet, final ByteBuf out) {
+        final int start = out.writerIndex();
+        out.writeMedium(0); // placeholder for the length
+        final FriendlyByteBuf buf = new FriendlyByteBuf(out);
+        buf.writeVarInt(packet.getID());
+        packet.write(buf);
+
+        final int length = out.writerIndex() - start - LENGTH_BYTES;
+        if (length > MAX_LENGTH)
+            throw new IllegalStateException("Packet " + packet + " is too large (" + length + " bytes)");
+        out.setMedium(start, paddedVarInt(length));
+    }
 
-        out.writeBytes(msg.rawSerialize());
+    /**
+     * Encodes a value as a var int padded to 3 bytes.
+     * @param value value to encode
+     * @return encoded var int
+     */
+    static int paddedVarInt(final int value) {
+        return (value & 0x7F | 0x80) << 16
+                | ((value >>> 7) & 0x7F | 0x80) << 8
+                | (value >>> 14) & 0x7F;
     }
 
 }
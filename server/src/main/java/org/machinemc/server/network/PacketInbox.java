@@ -0,0 +1,107 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.network;
+
+import io.netty.channel.Channel;
+import org.machinemc.api.network.packets.Packet;
+import org.machinemc.server.exception.ClientException;
+import org.machinemc.server.tick.TickScheduler;
+import org.machinemc.server.translation.PacketTranslator;
+import org.machinemc.server.translation.TranslatorDispatcher;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lock-free inbox of packets received by a single connection.
+ * <p>
+ * Packets are translated one at a time in the order they were received in. Once the
+ * next packet requires a different thread than the current one, as decided by the
+ * {@link PacketTranslator.Affinity} of its translators, the draining of the inbox
+ * is handed off to the executor of that affinity.
+ */
+class PacketInbox {
+
+    private final ClientConnection connection;
+    private final Channel channel;
+
+    private final Queue<Packet> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    PacketInbox(final ClientConnection connection, final Channel channel) {
+        this.connection = Objects.requireNonNull(connection, "Connection can not be null");
+        this.channel = Objects.requireNonNull(channel, "Channel can not be null");
+    }
+
+    /**
+     * Adds received packet to the inbox, if the inbox is not being drained
+     * already it is drained on the current thread.
+     * @param packet received packet
+     */
+    void offer(final Packet packet) {
+        queue.add(Objects.requireNonNull(packet, "Packet can not be null"));
+        if (draining.compareAndSet(false, true))
+            drain();
+    }
+
+    /**
+     * Translates the queued packets until the inbox is empty or the next packet
+     * has to be translated on a different thread.
+     */
+    private void drain() {
+        final TranslatorDispatcher dispatcher = connection.getServer().getTranslatorDispatcher();
+        final TickScheduler scheduler = connection.getServer().getScheduler();
+        do {
+            Packet packet;
+            while ((packet = queue.peek()) != null) {
+                switch (dispatcher.getAffinity(packet)) {
+                    case TICK -> {
+                        if (!scheduler.isTickThread()) {
+                            scheduler.execute(this::drain);
+                            return;
+                        }
+                    }
+                    case WORKER -> {
+                        if (scheduler.isTickThread() || channel.eventLoop().inEventLoop()) {
+                            dispatcher.getWorkers().execute(this::drain);
+                            return;
+                        }
+                    }
+                    default -> { }
+                }
+                queue.poll();
+                translate(dispatcher, packet);
+            }
+            draining.set(false);
+        } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    /**
+     * Plays all translators of the packet.
+     * @param dispatcher translator dispatcher
+     * @param packet packet to translate
+     */
+    private void translate(final TranslatorDispatcher dispatcher, final Packet packet) {
+        try {
+            if (!dispatcher.playIn(connection, packet)) return;
+            dispatcher.playInAfter(connection, packet);
+        } catch (Throwable throwable) {
+            connection.getServer().getExceptionHandler().handle(new ClientException(connection, throwable));
+        }
+    }
+
+}
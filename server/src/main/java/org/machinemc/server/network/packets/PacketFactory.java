@@ -14,36 +14,85 @@
  */
 package org.machinemc.server.network.packets;
 
+import org.jetbrains.annotations.Nullable;
 import org.machinemc.api.network.packets.Packet;
 import org.machinemc.api.utils.FriendlyByteBuf;
 import org.machinemc.server.utils.ClassUtils;
 
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
-import java.util.Objects;
+import java.util.*;
 
 /**
  * Handles the creation of Packet instances.
+ * <p>
+ * Next to the mappings, registered packets are stored in dense arrays indexed by
+ * the packet state and Mojang mapped id and the id of each packet class is cached, so the
+ * lookups done by the netty handlers are simple array loads.
  */
 public final class PacketFactory {
 
+    private static final int ID_MASK = (1 << Packet.PacketState.OFFSET) - 1;
+    private static final int STATES = Packet.PacketState.values().length;
+
     static final Map<Class<? extends Packet>, PacketCreator<? extends Packet>> CREATORS = new HashMap<>();
 
     static final Map<Integer, Class<? extends Packet>> IN_MAPPING = new HashMap<>();
     static final Map<Class<? extends Packet>, Integer> OUT_MAPPING = new HashMap<>();
 
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Packet>[][] CLASSES_BY_ID = new Class[STATES][0];
+    private static final PacketCreator<?>[][] CREATORS_BY_ID = new PacketCreator[STATES][0];
+
+    private static final ClassValue<Integer> IDS = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(final Class<?> type) {
+            final Integer out = OUT_MAPPING.get(type);
+            if (out != null) return out;
+            for (final Map.Entry<Integer, Class<? extends Packet>> entry : IN_MAPPING.entrySet()) {
+                if (entry.getValue() != type) continue;
+                return entry.getKey();
+            }
+            return -1;
+        }
+    };
+
     static {
-        try {
-            ClassUtils.loadClasses(PacketFactory.class.getPackageName());
-        } catch (IOException ignored) { }
+        for (final Class<?> packetClass : PacketIndex.packets())
+            ClassUtils.loadClass(packetClass);
     }
 
     private PacketFactory() {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Registers new packet to the factory.
+     * @param packetClass class reference of the packet
+     * @param fullID id of the packet, including the mask of packet state
+     * @param creator creator of the packet
+     */
+    static void register(final Class<? extends Packet> packetClass,
+                         final int fullID,
+                         final PacketCreator<? extends Packet> creator) {
+        final int stateIndex = fullID >> Packet.PacketState.OFFSET;
+        final int id = fullID & ID_MASK;
+        final boolean in = Packet.PacketState.fromMask(stateIndex)
+                .map(state -> Packet.PacketState.in().contains(state))
+                .orElseThrow(() -> new IllegalArgumentException("Invalid packet state of id " + fullID));
+
+        if (in)
+            IN_MAPPING.put(fullID, packetClass);
+        else
+            OUT_MAPPING.put(packetClass, fullID);
+        CREATORS.put(packetClass, creator);
+
+        if (CLASSES_BY_ID[stateIndex].length <= id) {
+            CLASSES_BY_ID[stateIndex] = Arrays.copyOf(CLASSES_BY_ID[stateIndex], id + 1);
+            CREATORS_BY_ID[stateIndex] = Arrays.copyOf(CREATORS_BY_ID[stateIndex], id + 1);
+        }
+        CLASSES_BY_ID[stateIndex][id] = packetClass;
+        CREATORS_BY_ID[stateIndex][id] = creator;
+    }
+
     /**
      * Creates new instance of a packet of provided class using the {@link FriendlyByteBuf}.
      * @param packetClass class reference of the packet
@@ -56,19 +105,28 @@ public final class PacketFactory {
         return Optional.ofNullable(creator.create(Objects.requireNonNull(buf)));
     }
 
+    /**
+     * Creates new instance of a packet with given Mojang mapped id using the {@link FriendlyByteBuf}.
+     * @param id id of the packet
+     * @param state state of the packet
+     * @param buf buffer containing the packet data
+     * @return instance of the packet, or null if there is no packet with given id
+     */
+    public static @Nullable Packet produce(final int id, final Packet.PacketState state, final FriendlyByteBuf buf) {
+        final PacketCreator<?>[] creators = CREATORS_BY_ID[state.getMask() >> Packet.PacketState.OFFSET];
+        if (id < 0 || id >= creators.length) return null;
+        final PacketCreator<?> creator = creators[id];
+        if (creator == null) return null;
+        return creator.create(Objects.requireNonNull(buf));
+    }
+
     /**
      * Returns class of the PacketIn from mapped packet id.
      * @param id id of the packet, including the mask of packet state
      * @return class of the packet
      */
     public static Optional<Class<? extends Packet>> getPacketInByID(final int id) {
-        final Class<? extends Packet> in = IN_MAPPING.get(id);
-        if (in != null) return Optional.of(in);
-        for (final Map.Entry<Class<? extends Packet>, Integer> entry : OUT_MAPPING.entrySet()) {
-            if (entry.getValue() != id) continue;
-            return Optional.ofNullable(entry.getKey());
-        }
-        return Optional.empty();
+        return getClass(id & ID_MASK, id >> Packet.PacketState.OFFSET);
     }
 
     /**
@@ -80,13 +138,7 @@ public final class PacketFactory {
     public static Optional<Class<? extends Packet>> getPacketByRawID(final int id,
                                                                      final ServerPacket.PacketState state) {
         Objects.requireNonNull(state);
-        final Class<? extends Packet> in = IN_MAPPING.get(id | state.getMask());
-        if (in != null) return Optional.of(in);
-        for (final Map.Entry<Class<? extends Packet>, Integer> entry : OUT_MAPPING.entrySet()) {
-            if (entry.getValue() != (id | state.getMask())) continue;
-            return Optional.ofNullable(entry.getKey());
-        }
-        return Optional.empty();
+        return getClass(id, state.getMask() >> Packet.PacketState.OFFSET);
     }
 
     /**
@@ -95,13 +147,7 @@ public final class PacketFactory {
      * @return id of the packet, -1 if it doesn't exist
      */
     public static int getIDByPacket(final Class<? extends Packet> packetClass) {
-        final Integer out = OUT_MAPPING.get(packetClass);
-        if (out != null) return out;
-        for (final Map.Entry<Integer, Class<? extends Packet>> entry : IN_MAPPING.entrySet()) {
-            if (entry.getValue() != packetClass) continue;
-            return entry.getKey();
-        }
-        return -1;
+        return IDS.get(packetClass);
     }
 
     /**
@@ -113,13 +159,9 @@ public final class PacketFactory {
     public static int getRawIDByPacket(final Class<? extends Packet> packetClass,
                                        final ServerPacket.PacketState state) {
         Objects.requireNonNull(state);
-        final Integer out = OUT_MAPPING.get(packetClass);
-        if (out != null) return out & ~state.getMask();
-        for (final Map.Entry<Integer, Class<? extends Packet>> entry : IN_MAPPING.entrySet()) {
-            if (entry.getValue() != packetClass) continue;
-            return entry.getKey() & ~state.getMask();
-        }
-        return -1;
+        final int id = IDS.get(packetClass);
+        if (id == -1) return -1;
+        return id & ~state.getMask();
     }
 
     /**
@@ -128,14 +170,22 @@ public final class PacketFactory {
      * @return state of the packets of given class
      */
     public static Optional<Packet.PacketState> getRegisteredState(final Class<? extends Packet> packetClass) {
-        final Integer out = OUT_MAPPING.get(packetClass);
-        if (out != null)
-            return Packet.PacketState.fromMask(out >> Packet.PacketState.OFFSET);
-        for (final Map.Entry<Integer, Class<? extends Packet>> entry : IN_MAPPING.entrySet()) {
-            if (entry.getValue() != packetClass) continue;
-            return Packet.PacketState.fromMask(entry.getKey() & (0b111 << Packet.PacketState.OFFSET));
-        }
-        return Optional.empty();
+        final int id = IDS.get(packetClass);
+        if (id == -1) return Optional.empty();
+        return Packet.PacketState.fromMask(id >> Packet.PacketState.OFFSET);
+    }
+
+    /**
+     * Returns class of the packet with given id and state index.
+     * @param id Mojang mapped id of the packet
+     * @param stateIndex index of the packet state
+     * @return class of the packet
+     */
+    private static Optional<Class<? extends Packet>> getClass(final int id, final int stateIndex) {
+        if (stateIndex < 0 || stateIndex >= STATES) return Optional.empty();
+        final Class<? extends Packet>[] classes = CLASSES_BY_ID[stateIndex];
+        if (id < 0 || id >= classes.length) return Optional.empty();
+        return Optional.ofNullable(classes[id]);
     }
 
 }
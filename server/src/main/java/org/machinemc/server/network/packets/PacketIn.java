@@ -38,8 +38,7 @@ public abstract class PacketIn extends ServerPacket {
         if (!PacketState.in().contains(state))
             throw new IllegalStateException("Packet of state " + state + " can not be registered as PacketIn");
         final int fullID = id | state.getMask();
-        PacketFactory.IN_MAPPING.put(fullID, packetClass);
-        PacketFactory.CREATORS.put(packetClass, creator);
+        PacketFactory.register(packetClass, fullID, creator);
     }
 
     /**
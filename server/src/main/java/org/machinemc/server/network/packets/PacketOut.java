@@ -38,8 +38,7 @@ public abstract class PacketOut extends ServerPacket {
         if (!PacketState.out().contains(state))
             throw new IllegalStateException("Packet of state " + state + " can not be registered as PacketOut");
         final int fullID = id | state.getMask();
-        PacketFactory.OUT_MAPPING.put(packetClass, fullID);
-        PacketFactory.CREATORS.put(packetClass, creator);
+        PacketFactory.register(packetClass, fullID, creator);
     }
 
     /**
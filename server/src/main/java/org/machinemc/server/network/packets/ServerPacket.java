@@ -16,6 +16,7 @@ package org.machinemc.server.network.packets;
 
 import org.machinemc.api.network.packets.Packet;
 import org.machinemc.api.utils.FriendlyByteBuf;
+import org.machinemc.api.utils.ServerBuffer;
 
 /**
  * Default packet implementation.
@@ -33,6 +34,18 @@ public abstract class ServerPacket implements Packet {
      */
     public abstract byte[] serialize();
 
+    /**
+     * Writes the packet data to the buffer, doesn't contain packet size and ID.
+     * <p>
+     * By default the data returned by {@link #serialize()} are copied into the buffer,
+     * packets that are sent often should override this method to write straight into the buffer.
+     * @param buf buffer to write into
+     */
+    @Override
+    public void write(final ServerBuffer buf) {
+        buf.writeBytes(serialize());
+    }
+
     /**
      * @return clone of the packet
      */
@@ -43,14 +56,13 @@ public abstract class ServerPacket implements Packet {
      * @return serialized packet
      */
     public byte[] rawSerialize() {
-        final byte[] id = new FriendlyByteBuf()
-                .writeVarInt(getID())
-                .bytes();
-        final byte[] data = serialize();
+        final FriendlyByteBuf buf = new FriendlyByteBuf();
+        buf.writeVarInt(getID());
+        write(buf);
+        final int length = buf.writerIndex();
         return new FriendlyByteBuf()
-                .writeVarInt(id.length + data.length)
-                .writeBytes(id)
-                .writeBytes(data)
+                .writeVarInt(length)
+                .write(buf)
                 .bytes();
     }
 
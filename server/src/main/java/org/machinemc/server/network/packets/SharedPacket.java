@@ -0,0 +1,35 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.network.packets;
+
+import io.netty.buffer.ByteBuf;
+import org.machinemc.api.network.packets.Packet;
+
+/**
+ * Packet that is sent unchanged to many clients, it keeps its encoded
+ * frame so it is serialized and compressed only once.
+ */
+public interface SharedPacket extends Packet {
+
+    /**
+     * Returns the encoded frame of the packet, the frame is kept until the packet changes.
+     * @param compressionThreshold compression threshold of the connection, -1 if compression is disabled
+     * @param compressionLevel zlib compression level
+     * @return encoded frame, it should not be released by the caller
+     * @see org.machinemc.server.network.FramedPacket#encode(Packet, int, int)
+     */
+    ByteBuf getFrame(int compressionThreshold, int compressionLevel);
+
+}
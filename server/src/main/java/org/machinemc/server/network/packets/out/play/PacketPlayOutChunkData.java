@@ -14,21 +14,22 @@
  */
 package org.machinemc.server.network.packets.out.play;
 
-import lombok.AllArgsConstructor;
+import io.netty.buffer.ByteBuf;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
 import lombok.ToString;
+import org.jetbrains.annotations.Nullable;
 import org.machinemc.api.utils.ServerBuffer;
 import org.machinemc.server.chunk.data.ChunkData;
 import org.machinemc.server.chunk.data.LightData;
+import org.machinemc.server.network.FramedPacket;
 import org.machinemc.server.network.packets.PacketOut;
+import org.machinemc.server.network.packets.SharedPacket;
 import org.machinemc.api.utils.FriendlyByteBuf;
 
 @Getter
-@Setter
 @ToString
-@AllArgsConstructor
-public class PacketPlayOutChunkData extends PacketOut {
+public class PacketPlayOutChunkData extends PacketOut implements SharedPacket {
 
     private static final int ID = 0x24;
 
@@ -37,11 +38,28 @@ public class PacketPlayOutChunkData extends PacketOut {
     private ChunkData chunkData;
     private LightData lightData;
 
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private volatile byte @Nullable [] serialized;
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private @Nullable ByteBuf frame;
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private int frameThreshold;
+
     static {
         register(PacketPlayOutChunkData.class, ID, PacketState.PLAY_OUT,
                 PacketPlayOutChunkData::new);
     }
 
+    public PacketPlayOutChunkData(final int chunkX, final int chunkZ, final ChunkData chunkData, final LightData lightData) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.chunkData = chunkData;
+        this.lightData = lightData;
+    }
+
     public PacketPlayOutChunkData(final ServerBuffer buf) {
         chunkX = buf.readInt();
         chunkZ = buf.readInt();
@@ -59,14 +77,68 @@ public class PacketPlayOutChunkData extends PacketOut {
         return PacketState.PLAY_OUT;
     }
 
+    public void setChunkX(final int chunkX) {
+        this.chunkX = chunkX;
+        invalidate();
+    }
+
+    public void setChunkZ(final int chunkZ) {
+        this.chunkZ = chunkZ;
+        invalidate();
+    }
+
+    public void setChunkData(final ChunkData chunkData) {
+        this.chunkData = chunkData;
+        invalidate();
+    }
+
+    public void setLightData(final LightData lightData) {
+        this.lightData = lightData;
+        invalidate();
+    }
+
+    /**
+     * Serializes the packet, the serialized data are kept until
+     * the packet is changed, so the same packet can be sent to
+     * multiple players without serializing it again.
+     * @return serialized packet
+     */
     @Override
     public byte[] serialize() {
-        return new FriendlyByteBuf()
+        byte[] serialized = this.serialized;
+        if (serialized != null) return serialized;
+        serialized = new FriendlyByteBuf()
                 .writeInt(chunkX)
                 .writeInt(chunkZ)
                 .write(chunkData)
                 .write(lightData)
                 .bytes();
+        this.serialized = serialized;
+        return serialized;
+    }
+
+    /**
+     * Encodes the packet into a frame, the frame is kept until the packet is changed,
+     * so the packet is compressed only once when sent to multiple players.
+     * @param compressionThreshold compression threshold of the connection, -1 if compression is disabled
+     * @param compressionLevel zlib compression level
+     * @return encoded frame
+     */
+    @Override
+    public synchronized ByteBuf getFrame(final int compressionThreshold, final int compressionLevel) {
+        if (frame == null || frameThreshold != compressionThreshold) {
+            frame = FramedPacket.encode(this, compressionThreshold, compressionLevel);
+            frameThreshold = compressionThreshold;
+        }
+        return frame;
+    }
+
+    /**
+     * Drops the serialized data and frame of the packet after it has been changed.
+     */
+    private synchronized void invalidate() {
+        serialized = null;
+        frame = null;
     }
 
     @Override
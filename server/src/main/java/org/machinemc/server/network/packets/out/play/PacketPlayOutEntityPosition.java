@@ -70,14 +70,17 @@ public class PacketPlayOutEntityPosition  extends PacketOut {
     }
 
     @Override
-    public byte[] serialize() {
-        return new FriendlyByteBuf()
-                .writeVarInt(entityID)
+    public void write(final ServerBuffer buf) {
+        buf.writeVarInt(entityID)
                 .writeShort(deltaX)
                 .writeShort(deltaY)
                 .writeShort(deltaZ)
-                .writeBoolean(onGround)
-                .bytes();
+                .writeBoolean(onGround);
+    }
+
+    @Override
+    public byte[] serialize() {
+        return asBytes();
     }
 
     @Override
@@ -65,13 +65,16 @@ public class PacketPlayOutEntityRotation  extends PacketOut {
     }
 
     @Override
-    public byte[] serialize() {
-        return new FriendlyByteBuf()
-                .writeVarInt(entityID)
+    public void write(final ServerBuffer buf) {
+        buf.writeVarInt(entityID)
                 .writeAngle(yaw)
                 .writeAngle(pitch)
-                .writeBoolean(onGround)
-                .bytes();
+                .writeBoolean(onGround);
+    }
+
+    @Override
+    public byte[] serialize() {
+        return asBytes();
     }
 
     @Override
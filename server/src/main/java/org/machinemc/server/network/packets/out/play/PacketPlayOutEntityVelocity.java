@@ -57,13 +57,16 @@ public class PacketPlayOutEntityVelocity extends PacketOut {
     }
 
     @Override
-    public byte[] serialize() {
-        return new FriendlyByteBuf()
-                .writeVarInt(entityID)
+    public void write(final ServerBuffer buf) {
+        buf.writeVarInt(entityID)
                 .writeShort(velocityX)
                 .writeShort(velocityY)
-                .writeShort(velocityZ)
-                .bytes();
+                .writeShort(velocityZ);
+    }
+
+    @Override
+    public byte[] serialize() {
+        return asBytes();
     }
 
     @Override
@@ -54,12 +54,15 @@ public class PacketPlayOutHeadRotation extends PacketOut {
         return Packet.PacketState.PLAY_OUT;
     }
 
+    @Override
+    public void write(final ServerBuffer buf) {
+        buf.writeVarInt(entityID)
+                .writeAngle(angle);
+    }
+
     @Override
     public byte[] serialize() {
-        return new FriendlyByteBuf()
-                .writeVarInt(entityID)
-                .writeAngle(angle)
-                .bytes();
+        return asBytes();
     }
 
     @Override
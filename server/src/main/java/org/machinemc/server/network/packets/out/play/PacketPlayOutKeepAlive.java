@@ -50,11 +50,14 @@ public class PacketPlayOutKeepAlive extends PacketOut {
         return PacketState.PLAY_OUT;
     }
 
+    @Override
+    public void write(final ServerBuffer buf) {
+        buf.writeLong(keepAliveID);
+    }
+
     @Override
     public byte[] serialize() {
-        return new FriendlyByteBuf()
-                .writeLong(keepAliveID)
-                .bytes();
+        return asBytes();
     }
 
     @Override
@@ -14,6 +14,7 @@
  */
 package org.machinemc.server.network.packets.out.play;
 
+import io.netty.buffer.ByteBuf;
 import lombok.*;
 import org.jetbrains.annotations.Nullable;
 import org.machinemc.api.auth.PublicKeyData;
@@ -25,7 +26,9 @@ import org.machinemc.api.utils.FriendlyByteBuf;
 import org.machinemc.api.utils.ServerBuffer;
 import org.machinemc.scriptive.components.Component;
 import org.machinemc.scriptive.serialization.ComponentProperties;
+import org.machinemc.server.network.FramedPacket;
 import org.machinemc.server.network.packets.PacketOut;
+import org.machinemc.server.network.packets.SharedPacket;
 
 import java.nio.charset.StandardCharsets;
 import java.util.BitSet;
@@ -35,15 +38,21 @@ import java.util.UUID;
 import java.util.function.BiConsumer;
 
 @Getter
-@Setter
 @ToString
-public class PacketPlayOutPlayerInfo extends PacketOut {
+public class PacketPlayOutPlayerInfo extends PacketOut implements SharedPacket {
 
     private static final int ID = 0x3A;
 
     private EnumSet<Action> actions;
     private PlayerInfoData[] playerInfoDataArray;
 
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private @Nullable ByteBuf frame;
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private int frameThreshold;
+
     static {
         register(PacketPlayOutPlayerInfo.class, ID, PacketState.PLAY_OUT,
                 PacketPlayOutPlayerInfo::new);
@@ -84,6 +93,16 @@ public class PacketPlayOutPlayerInfo extends PacketOut {
         return PacketState.PLAY_OUT;
     }
 
+    public void setActions(final EnumSet<Action> actions) {
+        this.actions = actions;
+        invalidate();
+    }
+
+    public void setPlayerInfoDataArray(final PlayerInfoData[] playerInfoDataArray) {
+        this.playerInfoDataArray = playerInfoDataArray;
+        invalidate();
+    }
+
     @Override
     public byte[] serialize() {
         final FriendlyByteBuf buf = new FriendlyByteBuf();
@@ -92,6 +111,29 @@ public class PacketPlayOutPlayerInfo extends PacketOut {
         return buf.bytes();
     }
 
+    /**
+     * Encodes the packet into a frame, the frame is kept until the packet is changed,
+     * so the player list sent to each joining player is compressed only once.
+     * @param compressionThreshold compression threshold of the connection, -1 if compression is disabled
+     * @param compressionLevel zlib compression level
+     * @return encoded frame
+     */
+    @Override
+    public synchronized ByteBuf getFrame(final int compressionThreshold, final int compressionLevel) {
+        if (frame == null || frameThreshold != compressionThreshold) {
+            frame = FramedPacket.encode(this, compressionThreshold, compressionLevel);
+            frameThreshold = compressionThreshold;
+        }
+        return frame;
+    }
+
+    /**
+     * Drops the frame of the packet after it has been changed.
+     */
+    private synchronized void invalidate() {
+        frame = null;
+    }
+
     @Override
     public PacketOut clone() {
         return new PacketPlayOutPlayerInfo(new FriendlyByteBuf(serialize()));
@@ -55,12 +55,15 @@ public class PacketPlayOutSystemChatMessage extends PacketOut {
         return PacketState.PLAY_OUT;
     }
 
+    @Override
+    public void write(final ServerBuffer buf) {
+        buf.writeComponent(message)
+                .writeBoolean(overlay);
+    }
+
     @Override
     public byte[] serialize() {
-        return new FriendlyByteBuf()
-                .writeComponent(message)
-                .writeBoolean(overlay)
-                .bytes();
+        return asBytes();
     }
 
     @Override
@@ -63,12 +63,15 @@ public class PacketPlayOutTeleportEntity extends PacketOut {
     }
 
     @Override
-    public byte[] serialize() {
-        return new FriendlyByteBuf()
-                .writeVarInt(entityID)
+    public void write(final ServerBuffer buf) {
+        buf.writeVarInt(entityID)
                 .write(position)
-                .writeBoolean(onGround)
-                .bytes();
+                .writeBoolean(onGround);
+    }
+
+    @Override
+    public byte[] serialize() {
+        return asBytes();
     }
 
     @Override
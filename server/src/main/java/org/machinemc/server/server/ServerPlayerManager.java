@@ -15,28 +15,49 @@
 package org.machinemc.server.server;
 
 import lombok.Getter;
+import lombok.Synchronized;
+import org.jetbrains.annotations.Nullable;
 import org.machinemc.api.Server;
 import org.machinemc.api.entities.Player;
+import org.machinemc.api.network.PlayerConnection;
 import org.machinemc.api.server.PlayerManager;
+import org.machinemc.server.entities.ServerPlayer;
+import org.machinemc.server.network.packets.out.play.PacketPlayOutPlayerInfo;
+import org.machinemc.server.tick.Tickable;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
  * Default player manager implementation.
+ * <p>
+ * Players joining during a tick are announced to everyone at once at the end of
+ * the tick with a single player info packet, and each joining player receives the
+ * cached list of the already announced players, so a burst of joins costs a constant
+ * number of packets per player instead of a packet per pair of players.
  */
-public class ServerPlayerManager implements PlayerManager {
+public class ServerPlayerManager implements PlayerManager, Tickable {
 
     private final Map<UUID, Player> playerMap = new ConcurrentHashMap<>();
     @Getter
     private final Server server;
 
+    private final Queue<ServerPlayer> pending = new ConcurrentLinkedQueue<>();
+    private final Object playerListLock = new Object();
+    private @Nullable PacketPlayOutPlayerInfo playerList;
+    private final Set<ServerPlayer> listRecipients = ConcurrentHashMap.newKeySet();
+
     public ServerPlayerManager(final Server server) {
         this.server = Objects.requireNonNull(server, "Server can not be null");
     }
@@ -51,6 +72,11 @@ public class ServerPlayerManager implements PlayerManager {
     public void removePlayer(final Player player) {
         Objects.requireNonNull(player, "Player can not be null");
         playerMap.remove(player.getUUID());
+        if (player instanceof ServerPlayer serverPlayer) {
+            pending.remove(serverPlayer);
+            listRecipients.remove(serverPlayer);
+        }
+        invalidatePlayerList();
     }
 
     @Override
@@ -78,6 +104,90 @@ public class ServerPlayerManager implements PlayerManager {
         return getPlayers().stream().filter(predicate).collect(Collectors.toSet());
     }
 
+    /**
+     * Queues a joining player to be announced to all players at the end of the tick.
+     * @param player joining player
+     * @see #tick(long)
+     */
+    public void announce(final ServerPlayer player) {
+        pending.add(Objects.requireNonNull(player, "Player can not be null"));
+    }
+
+    /**
+     * Returns the player info packet listing all announced players, the packet is
+     * shared by all players joining until the list changes.
+     * <p>
+     * The latency of the players in the list may be out of date.
+     * @return player list packet
+     */
+    @Synchronized("playerListLock")
+    private PacketPlayOutPlayerInfo getPlayerList() {
+        if (playerList != null) return playerList;
+        final List<Player> announced = new ArrayList<>();
+        for (final Player player : playerMap.values()) {
+            if (!(player instanceof ServerPlayer serverPlayer) || serverPlayer.isAnnounced())
+                announced.add(player);
+        }
+        playerList = new PacketPlayOutPlayerInfo(EnumSet.allOf(PacketPlayOutPlayerInfo.Action.class), announced.toArray(new Player[0]));
+        return playerList;
+    }
+
+    /**
+     * Sends the player list to a joining player, from then on the player
+     * receives the announcements of the other joining players.
+     * <p>
+     * Has to be called after the player received the login packet.
+     * @param player joining player
+     */
+    @Synchronized("playerListLock")
+    public void sendPlayerList(final ServerPlayer player) {
+        Objects.requireNonNull(player, "Player can not be null");
+        final PacketPlayOutPlayerInfo list = getPlayerList();
+        if (list.getPlayerInfoDataArray().length != 0)
+            player.sendPacket(list);
+        listRecipients.add(player);
+    }
+
+    /**
+     * Drops the cached player list after a player has been added, removed or changed.
+     */
+    @Synchronized("playerListLock")
+    public void invalidatePlayerList() {
+        playerList = null;
+    }
+
+    /**
+     * Announces the players that joined during the tick, all of them are sent
+     * to every player in a single player info packet, then they are spawned
+     * for the players that can see them.
+     * <p>
+     * The announcement is sent only to the players that received the player list,
+     * and it holds the lock of the player list, so each joining player either receives
+     * the list including the announced players or is one of the recipients of the announcement.
+     * @param tick number of the current tick
+     */
+    @Override
+    @Synchronized("playerListLock")
+    public void tick(final long tick) {
+        if (pending.isEmpty()) return;
+        final List<ServerPlayer> joined = new ArrayList<>();
+        ServerPlayer player;
+        while ((player = pending.poll()) != null) {
+            if (player.isActive()) joined.add(player);
+        }
+        if (joined.isEmpty()) return;
+        final List<PlayerConnection> recipients = new ArrayList<>(listRecipients.size());
+        for (final ServerPlayer recipient : listRecipients)
+            recipients.add(recipient.getConnection());
+        server.getConnection().broadcastPacket(
+                new PacketPlayOutPlayerInfo(EnumSet.allOf(PacketPlayOutPlayerInfo.Action.class), joined.toArray(new Player[0])),
+                recipients
+        );
+        playerList = null;
+        for (final ServerPlayer serverPlayer : joined)
+            serverPlayer.markAnnounced();
+    }
+
     @Override
     public String toString() {
         return "ServerPlayerManager("
@@ -0,0 +1,298 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.tick;
+
+import lombok.Getter;
+import org.jetbrains.annotations.Blocking;
+import org.jetbrains.annotations.NonBlocking;
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.api.server.schedule.Scheduler;
+import org.machinemc.server.Machine;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Scheduler driving the main server thread with a fixed-rate tick loop.
+ * <p>
+ * Each tick runs all sync tasks queued on the scheduler, then all registered
+ * {@link Tickable}s in the order of their {@link Phase}. If the server falls behind,
+ * ticks are run back-to-back until the loop catches up; if it falls behind by more than
+ * {@link #MAX_CATCH_UP} the missed ticks are skipped.
+ * <p>
+ * The scheduler is also an {@link Executor} running the submitted tasks
+ * on the tick thread at the start of the next tick.
+ */
+public class TickScheduler extends Scheduler implements Executor {
+
+    /**
+     * How far behind can the loop be before the missed ticks are skipped.
+     */
+    public static final long MAX_CATCH_UP = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * Number of ticks used to calculate average tick duration.
+     */
+    public static final int TICK_SAMPLES = 100;
+
+    @Getter
+    private final Machine server;
+
+    @Getter
+    private final ForkJoinPool regionPool;
+
+    private final Map<Phase, List<Tickable>> tickables = new EnumMap<>(Phase.class);
+    private final Queue<Runnable> tickTasks = new ConcurrentLinkedQueue<>();
+
+    @Getter
+    private int tps = Machine.DEFAULT_TPS;
+    private long tickDuration = TimeUnit.SECONDS.toNanos(1) / tps;
+
+    @Getter
+    private volatile long currentTick;
+    private final long[] tickTimes = new long[TICK_SAMPLES];
+    private volatile long lastTickTime;
+
+    private volatile @Nullable Thread thread;
+
+    /**
+     * Creates scheduler for the current thread.
+     * @param server server
+     * @param threadPoolSize thread pool size for the executor
+     * @param regionThreads parallelism of the pool used for ticking world regions
+     */
+    public TickScheduler(final Machine server, final int threadPoolSize, final int regionThreads) {
+        super(threadPoolSize);
+        this.server = Objects.requireNonNull(server, "Server can not be null");
+        regionPool = new ForkJoinPool(Math.max(1, regionThreads));
+        for (final Phase phase : Phase.values())
+            tickables.put(phase, new CopyOnWriteArrayList<>());
+    }
+
+    /**
+     * Runs given tasks in parallel on the region pool and blocks until
+     * all of them are finished.
+     * <p>
+     * Exceptions thrown by the tasks are passed to the server's exception handler.
+     * @param tasks tasks to run
+     */
+    public void runParallel(final Collection<? extends Runnable> tasks) {
+        Objects.requireNonNull(tasks, "Tasks can not be null");
+        if (tasks.size() <= 1 || regionPool.getParallelism() == 1) {
+            for (final Runnable task : tasks) {
+                try {
+                    task.run();
+                } catch (Throwable throwable) {
+                    server.getExceptionHandler().handle(throwable);
+                }
+            }
+            return;
+        }
+        final List<Callable<Object>> callables = new ArrayList<>(tasks.size());
+        for (final Runnable task : tasks)
+            callables.add(Executors.callable(task));
+        for (final Future<Object> future : regionPool.invokeAll(callables)) {
+            try {
+                future.get();
+            } catch (ExecutionException exception) {
+                server.getExceptionHandler().handle(exception.getCause());
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs the task on the tick thread at the start of the next tick.
+     * @param task task to run
+     */
+    @Override
+    public void execute(final Runnable task) {
+        tickTasks.add(Objects.requireNonNull(task, "Task can not be null"));
+    }
+
+    /**
+     * @return whether the current thread is the thread running the tick loop
+     */
+    public boolean isTickThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Changes the tick rate of the scheduler.
+     * @param tps new amount of ticks per second
+     */
+    public void setTPS(final int tps) {
+        if (tps <= 0) throw new IllegalArgumentException("Amount of ticks per second has to be positive");
+        this.tps = tps;
+        tickDuration = TimeUnit.SECONDS.toNanos(1) / tps;
+    }
+
+    /**
+     * Registers new tickable to the scheduler.
+     * @param phase phase in which the tickable should be ticked
+     * @param tickable tickable to register
+     */
+    public void addTickable(final Phase phase, final Tickable tickable) {
+        Objects.requireNonNull(phase, "Phase can not be null");
+        Objects.requireNonNull(tickable, "Tickable can not be null");
+        tickables.get(phase).add(tickable);
+    }
+
+    /**
+     * Unregisters a tickable from the scheduler.
+     * @param tickable tickable to unregister
+     * @return whether the tickable was registered
+     */
+    public boolean removeTickable(final Tickable tickable) {
+        Objects.requireNonNull(tickable, "Tickable can not be null");
+        boolean removed = false;
+        for (final List<Tickable> list : tickables.values())
+            removed |= list.remove(tickable);
+        return removed;
+    }
+
+    /**
+     * Runs the tick loop on the current thread and blocks it until
+     * the scheduler is shutdown.
+     * @throws InterruptedException if interrupted while running
+     */
+    @Override
+    @Blocking
+    public void run() throws InterruptedException {
+        running = true;
+        sessions.clear();
+        thread = Thread.currentThread();
+        long nextTick = System.nanoTime();
+        while (running) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            final long now = System.nanoTime();
+            final long behind = now - nextTick;
+            if (behind < 0) {
+                LockSupport.parkNanos(this, -behind);
+                continue;
+            }
+            if (behind > MAX_CATCH_UP) {
+                final long skipped = behind / tickDuration;
+                server.getConsole().warning("Can't keep up! Is the server overloaded? Running "
+                        + TimeUnit.NANOSECONDS.toMillis(behind) + "ms or " + skipped + " ticks behind");
+                nextTick = now;
+            }
+
+            tick();
+            nextTick += tickDuration;
+        }
+        thread = null;
+    }
+
+    @Override
+    @NonBlocking
+    public void shutdown() throws InterruptedException {
+        super.shutdown();
+        final Thread thread = this.thread;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    /**
+     * Runs a single tick.
+     */
+    private void tick() {
+        final long start = System.nanoTime();
+        final long tick = currentTick;
+
+        runSyncTasks();
+        runTickTasks();
+        for (final Phase phase : Phase.values()) {
+            for (final Tickable tickable : tickables.get(phase)) {
+                try {
+                    tickable.tick(tick);
+                } catch (Throwable throwable) {
+                    server.getExceptionHandler().handle(throwable);
+                }
+            }
+        }
+
+        final long duration = System.nanoTime() - start;
+        tickTimes[(int) (tick % TICK_SAMPLES)] = duration;
+        lastTickTime = duration;
+        currentTick = tick + 1;
+    }
+
+    /**
+     * Runs tasks submitted to the executor before the start of the tick.
+     */
+    private void runTickTasks() {
+        int queued = tickTasks.size();
+        Runnable task;
+        while (queued-- > 0 && (task = tickTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable throwable) {
+                server.getExceptionHandler().handle(throwable);
+            }
+        }
+    }
+
+    /**
+     * @return duration of the last tick in milliseconds
+     */
+    public double getLastMSPT() {
+        return lastTickTime / 1_000_000d;
+    }
+
+    /**
+     * @return average duration of the last {@link #TICK_SAMPLES} ticks in milliseconds
+     */
+    public double getAverageMSPT() {
+        final int samples = (int) Math.min(currentTick, TICK_SAMPLES);
+        if (samples == 0) return 0;
+        long total = 0;
+        for (int i = 0; i < samples; i++)
+            total += tickTimes[i];
+        return total / (double) samples / 1_000_000d;
+    }
+
+    @Override
+    public String toString() {
+        return "TickScheduler("
+                + "running=" + isRunning()
+                + ", tps=" + tps
+                + ", tick=" + currentTick
+                + ')';
+    }
+
+    /**
+     * Phases of a single tick, tickables are ticked in the order of phases they
+     * are registered in.
+     */
+    public enum Phase {
+
+        /**
+         * Ticking of the worlds and their entities.
+         */
+        WORLD,
+
+        /**
+         * Flushing of the output produced during the tick to the clients.
+         */
+        NETWORK
+
+    }
+
+}
@@ -0,0 +1,30 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.tick;
+
+/**
+ * Represents an object that is updated once per server tick.
+ * @see TickScheduler
+ */
+@FunctionalInterface
+public interface Tickable {
+
+    /**
+     * Updates the object, called once per tick from the tick thread.
+     * @param tick number of the current tick
+     */
+    void tick(long tick);
+
+}
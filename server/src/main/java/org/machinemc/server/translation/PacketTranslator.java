@@ -43,4 +43,51 @@ public abstract class PacketTranslator<T extends Packet> {
      */
     public abstract Class<T> packetClass();
 
+    /**
+     * Returns on which threads should the translator be called.
+     * <p>
+     * Translators of packets received from the client are called in the same order the
+     * packets were received in, even if they have different affinities.
+     * @return execution affinity of the translator
+     */
+    public Affinity affinity() {
+        return Affinity.IO;
+    }
+
+    /**
+     * Returns whether the translator changes the packet differently for each connection.
+     * <p>
+     * Broadcast packets are encoded only once and the same bytes are sent to all
+     * clients, packets with connection specific translators are encoded separately
+     * for each connection instead.
+     * @return whether the translator is connection specific
+     */
+    public boolean isConnectionSpecific() {
+        return false;
+    }
+
+    /**
+     * Execution affinity of a packet translator.
+     */
+    public enum Affinity {
+
+        /**
+         * The translator is called directly on the network thread that received the packet,
+         * should be used only by translators that never block.
+         */
+        IO,
+
+        /**
+         * The translator is called on a worker thread, for translators doing
+         * expensive or blocking operations.
+         */
+        WORKER,
+
+        /**
+         * The translator is called on the tick thread at the start of the next tick.
+         */
+        TICK
+
+    }
+
 }
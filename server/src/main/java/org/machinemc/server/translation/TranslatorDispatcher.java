@@ -21,18 +21,28 @@ import org.machinemc.api.network.packets.Packet;
 import org.machinemc.server.Machine;
 import org.machinemc.server.network.ClientConnection;
 import org.machinemc.server.network.packets.PacketFactory;
-import org.machinemc.server.utils.ClassUtils;
+import org.machinemc.server.network.packets.PacketIndex;
 
-import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Translator dispatcher, calls registered translators from received packets.
+ * <p>
+ * Registered translators are compiled into immutable arrays indexed by the packet
+ * state and id, which are rebuilt each time a translator is registered or unregistered.
+ * Each packet is also assigned the strongest {@link PacketTranslator.Affinity} of its
+ * translators, which decides on which threads the received packet is translated.
  */
 @SuppressWarnings("unchecked")
 public class TranslatorDispatcher {
 
+    private static final int ID_MASK = (1 << Packet.PacketState.OFFSET) - 1;
+    private static final Pipeline EMPTY = new Pipeline(new PacketTranslator[0], PacketTranslator.Affinity.IO, false);
+
     @Getter
     private final Machine server;
 
@@ -45,29 +55,22 @@ public class TranslatorDispatcher {
             PacketTranslator<? extends Packet>
             > outTranslators = ArrayListMultimap.create();
 
+    private volatile Pipeline[][] pipelines = compile();
+
+    @Getter
+    private final ExecutorService workers;
+
     /**
      * Creates the default dispatcher with all translators from 'translators' package
      * loaded.
+     * <p>
+     * The translators are listed in the packet index generated at build time.
      * @param server server to create the dispatcher for
      * @return created dispatcher with all server's translators loaded
      */
-    public static TranslatorDispatcher createDefault(final Machine server) throws ClassNotFoundException, IOException {
+    public static TranslatorDispatcher createDefault(final Machine server) {
         final TranslatorDispatcher dispatcher = new TranslatorDispatcher(server);
-        final List<String> classes = ClassUtils.getClasses(TranslatorDispatcher.class.getPackageName());
-        for (final String className : classes) {
-            final Class<?> translatorClass = Class.forName(className);
-            if (!PacketTranslator.class.isAssignableFrom(translatorClass)
-                    || translatorClass.equals(PacketTranslator.class))
-                continue;
-            PacketTranslator<?> translator = null;
-            try {
-                translator = (PacketTranslator<?>) translatorClass.getConstructor().newInstance();
-            } catch (Exception ignored) { }
-            if (translator == null) {
-                server.getConsole().severe("Failed to construct " + translatorClass.getSimpleName()
-                        + " packet translator, it has no default constructor");
-                continue;
-            }
+        for (final PacketTranslator<?> translator : PacketIndex.translators()) {
             final Packet.PacketState state = PacketFactory.getRegisteredState(translator.packetClass()).orElse(null);
             if (state == null) continue;
             if (Packet.PacketState.in().contains(state))
@@ -80,62 +83,73 @@ public class TranslatorDispatcher {
 
     TranslatorDispatcher(final Machine server) {
         this.server = Objects.requireNonNull(server, "Server of translator dispatcher can not be null");
+        final int threads = server.getProperties().getTranslatorThreads();
+        workers = threads > 0
+                ? Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("Translator-", 0).daemon().factory())
+                : Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Translator-", 0).factory());
     }
 
     /**
      * Registers the new packet translator for the dispatcher.
      * @param translator translator to register
      */
-    public void registerInTranslator(final PacketTranslator<? extends Packet> translator) {
+    public synchronized void registerInTranslator(final PacketTranslator<? extends Packet> translator) {
         inTranslators.put(translator.packetClass(), translator);
+        pipelines = compile();
     }
 
     /**
      * Unregisters the new packet translator for the dispatcher.
      * @param translator translator to register
      */
-    public void unregisterInTranslator(final PacketTranslator<? extends Packet> translator) {
+    public synchronized void unregisterInTranslator(final PacketTranslator<? extends Packet> translator) {
         inTranslators.remove(translator.packetClass(), translator);
+        pipelines = compile();
     }
 
     /**
      * Unregisters all the packet translators listening to packet of provided class.
      * @param packetClass packet class of packet translators to unregister
      */
-    public void unregisterInTranslator(final Class<? extends Packet> packetClass) {
+    public synchronized void unregisterInTranslator(final Class<? extends Packet> packetClass) {
         inTranslators.removeAll(packetClass);
+        pipelines = compile();
     }
 
     /**
      * Registers the new packet translator for the dispatcher.
      * @param translator translator to register
      */
-    public void registerOutTranslator(final PacketTranslator<? extends Packet> translator) {
+    public synchronized void registerOutTranslator(final PacketTranslator<? extends Packet> translator) {
         outTranslators.put(translator.packetClass(), translator);
+        pipelines = compile();
     }
 
     /**
      * Unregisters the new packet translator for the dispatcher.
      * @param translator translator to register
      */
-    public void unregisterOutTranslator(final PacketTranslator<? extends Packet> translator) {
+    public synchronized void unregisterOutTranslator(final PacketTranslator<? extends Packet> translator) {
         outTranslators.remove(translator.packetClass(), translator);
+        pipelines = compile();
     }
 
     /**
      * Unregisters all the packet translators listening to packet of provided class.
      * @param packetClass packet class of packet translators to unregister
      */
-    public void unregisterOutTranslator(final Class<? extends Packet> packetClass) {
+    public synchronized void unregisterOutTranslator(final Class<? extends Packet> packetClass) {
         outTranslators.removeAll(packetClass);
+        pipelines = compile();
     }
 
     /**
      * Unregisters all packet translators of this dispatcher.
      */
-    public void clear() {
+    public synchronized void clear() {
         inTranslators.clear();
         outTranslators.clear();
+        pipelines = compile();
     }
 
     /**
@@ -161,8 +175,8 @@ public class TranslatorDispatcher {
     public boolean playIn(final ClientConnection connection, final Packet packet) throws Exception {
         Objects.requireNonNull(connection, "Connection can not be null");
         boolean result = true;
-        for (final PacketTranslator<? extends Packet> translator : inTranslators.get(packet.getClass()))
-            result = ((PacketTranslator<Packet>) translator).translate(connection, packet);
+        for (final PacketTranslator<Packet> translator : pipeline(packet).translators())
+            result = translator.translate(connection, packet);
         return result;
     }
 
@@ -175,8 +189,8 @@ public class TranslatorDispatcher {
     public boolean playOut(final ClientConnection connection, final Packet packet) throws Exception {
         Objects.requireNonNull(connection, "Connection can not be null");
         boolean result = true;
-        for (final PacketTranslator<? extends Packet> translator : outTranslators.get(packet.getClass()))
-            result = ((PacketTranslator<Packet>) translator).translate(connection, packet);
+        for (final PacketTranslator<Packet> translator : pipeline(packet).translators())
+            result = translator.translate(connection, packet);
         return result;
     }
 
@@ -199,8 +213,8 @@ public class TranslatorDispatcher {
      */
     public void playInAfter(final ClientConnection connection, final Packet packet) throws Exception {
         Objects.requireNonNull(connection, "Connection can not be null");
-        for (final PacketTranslator<? extends Packet> translator : inTranslators.get(packet.getClass()))
-            ((PacketTranslator<Packet>) translator).translateAfter(connection, packet);
+        for (final PacketTranslator<Packet> translator : pipeline(packet).translators())
+            translator.translateAfter(connection, packet);
     }
 
     /**
@@ -210,8 +224,88 @@ public class TranslatorDispatcher {
      */
     public void playOutAfter(final ClientConnection connection, final Packet packet) throws Exception {
         Objects.requireNonNull(connection, "Connection can not be null");
-        for (final PacketTranslator<? extends Packet> translator : outTranslators.get(packet.getClass()))
-            ((PacketTranslator<Packet>) translator).translateAfter(connection, packet);
+        for (final PacketTranslator<Packet> translator : pipeline(packet).translators())
+            translator.translateAfter(connection, packet);
+    }
+
+    /**
+     * Checks whether there are any translators registered for given packet.
+     * @param packet packet
+     * @return true if the packet has at least one translator
+     */
+    public boolean hasTranslators(final Packet packet) {
+        return pipeline(packet).translators().length != 0;
+    }
+
+    /**
+     * Returns affinity of translators registered for given packet.
+     * @param packet packet
+     * @return affinity of the packet's translators
+     */
+    public PacketTranslator.Affinity getAffinity(final Packet packet) {
+        return pipeline(packet).affinity();
+    }
+
+    /**
+     * Checks whether any translator registered for given packet is connection specific,
+     * such packets can not be encoded once for multiple connections.
+     * @param packet packet
+     * @return whether the packet has connection specific translators
+     * @see PacketTranslator#isConnectionSpecific()
+     */
+    public boolean isConnectionSpecific(final Packet packet) {
+        return pipeline(packet).connectionSpecific();
+    }
+
+    /**
+     * Returns translators registered for given packet.
+     * @param packet packet
+     * @return translators of the packet
+     */
+    private Pipeline pipeline(final Packet packet) {
+        final Pipeline[] byID = pipelines[packet.getPacketState().getMask() >> Packet.PacketState.OFFSET];
+        final int id = packet.getID();
+        if (id < 0 || id >= byID.length) return EMPTY;
+        final Pipeline pipeline = byID[id];
+        return pipeline != null ? pipeline : EMPTY;
+    }
+
+    /**
+     * Compiles registered translators into arrays indexed by the packet state and id.
+     * @return compiled translators
+     */
+    private Pipeline[][] compile() {
+        final Pipeline[][] compiled = new Pipeline[Packet.PacketState.values().length][0];
+        for (final Multimap<Class<? extends Packet>, PacketTranslator<? extends Packet>> translators
+                : List.of(inTranslators, outTranslators)) {
+            for (final Class<? extends Packet> packetClass : translators.keySet()) {
+                final int fullID = PacketFactory.getIDByPacket(packetClass);
+                if (fullID == -1) continue;
+                final int state = fullID >> Packet.PacketState.OFFSET;
+                final int id = fullID & ID_MASK;
+                if (compiled[state].length <= id)
+                    compiled[state] = Arrays.copyOf(compiled[state], id + 1);
+                final PacketTranslator<Packet>[] pipeline = translators.get(packetClass).toArray(new PacketTranslator[0]);
+                PacketTranslator.Affinity affinity = PacketTranslator.Affinity.IO;
+                boolean connectionSpecific = false;
+                for (final PacketTranslator<Packet> translator : pipeline) {
+                    if (translator.affinity().compareTo(affinity) > 0)
+                        affinity = translator.affinity();
+                    connectionSpecific |= translator.isConnectionSpecific();
+                }
+                compiled[state][id] = new Pipeline(pipeline, affinity, connectionSpecific);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Compiled translators of a single packet.
+     * @param translators translators of the packet
+     * @param affinity strongest affinity of the translators
+     * @param connectionSpecific whether any of the translators is connection specific
+     */
+    private record Pipeline(PacketTranslator<Packet>[] translators, PacketTranslator.Affinity affinity, boolean connectionSpecific) {
     }
 
 }
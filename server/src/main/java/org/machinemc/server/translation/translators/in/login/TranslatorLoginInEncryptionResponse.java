@@ -84,11 +84,10 @@ public class TranslatorLoginInEncryptionResponse extends PacketTranslator<Packet
                     json.getAsJsonArray("properties").get(0)
             ).orElse(null);
             final PlayerProfile profile = ServerPlayerProfile.online(authUsername, authUUID, playerTextures);
-            connection.setCompression(256); // TODO should be in properties
-            connection.send(new PacketLoginOutSuccess(authUUID, authUsername, profile.getTextures().orElse(null)));
-            if (connection.getState().orElse(null) == ClientConnection.ClientState.DISCONNECTED)
+            final int threshold = connection.getServer().getProperties().getCompressionThreshold();
+            if (threshold >= 0) connection.setCompression(threshold);
+            if (!connection.completeLogin(new PacketLoginOutSuccess(authUUID, authUsername, profile.getTextures().orElse(null))))
                 return;
-            connection.setState(ClientConnection.ClientState.PLAY);
             ServerPlayer.spawn(connection.getServer(), profile, connection);
         }).exceptionally(exception -> {
             connection.getServer().getExceptionHandler().handle(new ClientException(connection, exception.getCause()));
@@ -101,4 +100,9 @@ public class TranslatorLoginInEncryptionResponse extends PacketTranslator<Packet
         return PacketLoginInEncryptionResponse.class;
     }
 
+    @Override
+    public Affinity affinity() {
+        return Affinity.WORKER;
+    }
+
 }
@@ -16,7 +16,6 @@ package org.machinemc.server.translation.translators.in.login;
 
 import org.machinemc.api.auth.OnlineServer;
 import org.machinemc.api.entities.player.PlayerProfile;
-import org.machinemc.api.network.PlayerConnection;
 import org.machinemc.server.entities.ServerPlayer;
 import org.machinemc.server.entities.player.ServerPlayerProfile;
 import org.machinemc.server.network.ClientConnection;
@@ -37,14 +36,14 @@ public class TranslatorLoginInStart extends PacketTranslator<PacketLoginInStart>
         connection.setLoginUsername(packet.getUsername());
         if (!connection.getServer().isOnline()) {
             final PlayerProfile profile = ServerPlayerProfile.offline(packet.getUsername());
-            connection.send(new PacketLoginOutSuccess(
+            final int threshold = connection.getServer().getProperties().getCompressionThreshold();
+            if (threshold >= 0) connection.setCompression(threshold);
+            final boolean play = connection.completeLogin(new PacketLoginOutSuccess(
                     profile.getUUID(),
                     profile.getUsername(),
                     profile.getTextures().orElse(null)
             ));
-            if (connection.getState().orElse(null) == PlayerConnection.ClientState.DISCONNECTED)
-                return;
-            connection.setState(PlayerConnection.ClientState.PLAY);
+            if (!play) return;
             ServerPlayer.spawn(connection.getServer(), profile, connection);
             return;
         }
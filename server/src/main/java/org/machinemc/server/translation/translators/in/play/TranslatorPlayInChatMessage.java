@@ -94,4 +94,9 @@ public class TranslatorPlayInChatMessage extends PacketTranslator<PacketPlayInCh
         return PacketPlayInChatMessage.class;
     }
 
+    @Override
+    public Affinity affinity() {
+        return Affinity.WORKER;
+    }
+
 }
@@ -0,0 +1,139 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.utils;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel running timeouts on a single shared thread.
+ * <p>
+ * Timeouts are put into slots of the wheel by their deadline, each tick the wheel
+ * processes the slot of the current time. Scheduling of a timeout is O(1) and
+ * the precision of the deadlines is limited by the tick duration of the wheel.
+ */
+public final class TimerWheel {
+
+    /**
+     * Timer wheel shared by the server's caches.
+     */
+    public static final TimerWheel SHARED = new TimerWheel(100, TimeUnit.MILLISECONDS, 512);
+
+    @Getter
+    private final long tickDuration;
+    private final Queue<Timeout>[] wheel;
+    private final int mask;
+
+    private volatile long processedTick;
+
+    private volatile Consumer<Throwable> errorHandler = throwable -> {
+        final Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+    };
+
+    /**
+     * Creates new timer wheel and starts its thread.
+     * @param tickDuration duration of a single tick of the wheel
+     * @param unit time unit of the tick duration
+     * @param slots number of slots of the wheel, rounded up to power of two
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(final long tickDuration, final TimeUnit unit, final int slots) {
+        if (tickDuration <= 0) throw new IllegalArgumentException("Tick duration has to be positive");
+        if (slots <= 0) throw new IllegalArgumentException("Number of slots has to be positive");
+        this.tickDuration = unit.toNanos(tickDuration);
+        final int size = Integer.highestOneBit(slots - 1) << 1;
+        wheel = new Queue[Math.max(1, size)];
+        for (int i = 0; i < wheel.length; i++)
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        mask = wheel.length - 1;
+        processedTick = System.nanoTime() / this.tickDuration;
+
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("Timer-wheel").daemon().factory()
+        );
+        executor.scheduleAtFixedRate(this::tick, tickDuration, tickDuration, unit);
+    }
+
+    /**
+     * Sets the handler of the exceptions thrown by the timeouts, by default
+     * they are passed to the uncaught exception handler of the wheel's thread.
+     * @param errorHandler new error handler
+     */
+    public void setErrorHandler(final Consumer<Throwable> errorHandler) {
+        this.errorHandler = Objects.requireNonNull(errorHandler, "Error handler can not be null");
+    }
+
+    /**
+     * Schedules the timeout to be run once the deadline passes.
+     * @param timeout timeout to schedule
+     * @param deadline deadline of the timeout, in {@link System#nanoTime()} time
+     */
+    public void schedule(final Timeout timeout, final long deadline) {
+        Objects.requireNonNull(timeout, "Timeout can not be null");
+        final long tick = Math.max(deadline / tickDuration, processedTick + 1);
+        wheel[(int) (tick & mask)].add(timeout);
+    }
+
+    /**
+     * Processes all slots up to the current time.
+     */
+    private void tick() {
+        final long now = System.nanoTime();
+        final long currentTick = now / tickDuration;
+        final List<Timeout> expired = new ArrayList<>();
+        for (long tick = Math.max(processedTick + 1, currentTick - mask); tick <= currentTick; tick++) {
+            final Queue<Timeout> slot = wheel[(int) (tick & mask)];
+            Timeout timeout;
+            while ((timeout = slot.poll()) != null)
+                expired.add(timeout);
+        }
+        processedTick = currentTick;
+        for (final Timeout timeout : expired) {
+            try {
+                final long next = timeout.expire(now);
+                if (next >= 0) schedule(timeout, next);
+            } catch (Throwable throwable) {
+                errorHandler.accept(throwable);
+            }
+        }
+    }
+
+    /**
+     * Timeout scheduled on the wheel.
+     */
+    @FunctionalInterface
+    public interface Timeout {
+
+        /**
+         * Called once the slot of the timeout's deadline is processed, that can happen
+         * before the deadline if it was more than one rotation of the wheel away.
+         * @param now current time in {@link System#nanoTime()} time
+         * @return new deadline if the timeout should be scheduled again, -1 otherwise
+         */
+        long expire(long now);
+
+    }
+
+}
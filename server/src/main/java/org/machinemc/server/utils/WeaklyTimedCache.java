@@ -18,7 +18,6 @@ import com.google.common.cache.*;
 import com.google.common.collect.ImmutableMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.machinemc.api.server.schedule.Scheduler;
 
 import java.util.Map;
 import java.util.Objects;
@@ -30,6 +29,11 @@ import java.util.concurrent.*;
  * <p>
  * Should be used for weak value cache where computing the values costs too many
  * resources.
+ * <p>
+ * Recently accessed values are kept strongly referenced by the cache, each access
+ * only updates the access time of the value. The references are released by a
+ * {@link TimerWheel} shared by all caches once the value has not been accessed
+ * for the reference time.
  * @param <K> key
  * @param <V> value
  */
@@ -37,85 +41,109 @@ public class WeaklyTimedCache<K, V> implements Cache<K, V> {
 
     private final Cache<K, V> delegating;
 
-    private final ScheduledExecutorService executor = new Scheduler(2).getThreadPoolExecutor();
+    private final TimerWheel timerWheel;
+    private final ConcurrentMap<K, Reference> references = new ConcurrentHashMap<>();
 
     /**
-     * For how long the value will stay referenced internally after loading.
+     * For how long the value will stay referenced internally after its last access.
      */
     private final long delay;
-    private final TimeUnit referenceTime;
 
     public WeaklyTimedCache(final long delay, final TimeUnit referenceTime) {
-        delegating = CacheBuilder.newBuilder()
-                .weakValues()
-                .build();
-        this.delay = delay;
-        this.referenceTime = Objects.requireNonNull(referenceTime);
+        this(CacheBuilder.newBuilder(), delay, referenceTime);
     }
 
     /**
      * Creates nre weakly timed cache from an existing builder.
+     * <p>
+     * The builder can be used to set the maximum size of the cache or a removal
+     * listener, which is notified once the value is collected.
      * @param builder builder
      * @param delay delay of removing the entry after it's
      *              referenced only in the cache itself
      * @param referenceTime time unit for delay
      * @apiNote automatically assigns weak values to the provided builder
      */
-    public WeaklyTimedCache(final CacheBuilder<K, V> builder, final long delay, final TimeUnit referenceTime) {
+    public WeaklyTimedCache(final CacheBuilder<? super K, ? super V> builder,
+                            final long delay,
+                            final TimeUnit referenceTime) {
+        this(builder, delay, referenceTime, TimerWheel.SHARED);
+    }
+
+    /**
+     * Creates nre weakly timed cache from an existing builder.
+     * @param builder builder
+     * @param delay delay of removing the entry after it's
+     *              referenced only in the cache itself
+     * @param referenceTime time unit for delay
+     * @param timerWheel timer wheel releasing the references
+     * @apiNote automatically assigns weak values to the provided builder
+     */
+    public WeaklyTimedCache(final CacheBuilder<? super K, ? super V> builder,
+                            final long delay,
+                            final TimeUnit referenceTime,
+                            final TimerWheel timerWheel) {
+        Objects.requireNonNull(builder, "Cache builder can not be null");
+        Objects.requireNonNull(referenceTime, "Reference time can not be null");
+        if (delay < 0) throw new IllegalArgumentException("Delay can not be negative");
         delegating = builder
                 .weakValues()
                 .build();
-        this.delay = delay;
-        this.referenceTime = referenceTime;
+        this.delay = referenceTime.toNanos(delay);
+        this.timerWheel = Objects.requireNonNull(timerWheel, "Timer wheel can not be null");
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public @Nullable V getIfPresent(final @NotNull Object key) {
         final V value = delegating.getIfPresent(key);
         if (value == null) return null;
-        executor.schedule(() -> eat(value), delay, referenceTime);
+        reference((K) key, value);
         return value;
     }
 
     @Override
     public @NotNull V get(final @NotNull K key, final @NotNull Callable<? extends V> valueLoader) throws ExecutionException {
         final V value = delegating.get(key, valueLoader);
-        executor.schedule(() -> eat(value), delay, referenceTime);
+        reference(key, value);
         return value;
     }
 
     @Override
     public @NotNull ImmutableMap<K, V> getAllPresent(final @NotNull Iterable<?> keys) {
         final ImmutableMap<K, V> map = delegating.getAllPresent(keys);
-        map.values().forEach(this::eat);
+        map.forEach(this::reference);
         return map;
     }
 
     @Override
     public void put(final @NotNull K key, final @NotNull V value) {
         delegating.put(key, value);
-        executor.schedule(() -> eat(value), delay, referenceTime);
+        reference(key, value);
     }
 
     @Override
     public void putAll(final @NotNull Map<? extends K, ? extends V> m) {
         delegating.putAll(m);
-        m.values().forEach(this::eat);
+        m.forEach(this::reference);
     }
 
     @Override
     public void invalidate(final @NotNull Object key) {
         delegating.invalidate(key);
+        references.remove(key);
     }
 
     @Override
     public void invalidateAll(final @NotNull Iterable<?> keys) {
         delegating.invalidateAll(keys);
+        keys.forEach(references::remove);
     }
 
     @Override
     public void invalidateAll() {
         delegating.invalidateAll();
+        references.clear();
     }
 
     @Override
@@ -138,7 +166,52 @@ public class WeaklyTimedCache<K, V> implements Cache<K, V> {
         delegating.cleanUp();
     }
 
-    private void eat(final @SuppressWarnings("unused") V value) {
+    /**
+     * Keeps the value referenced by the cache for the reference time.
+     * <p>
+     * The access time is updated atomically with the expiration of the reference,
+     * if the reference has already been released new one is created.
+     * @param key key of the value
+     * @param value value
+     */
+    private void reference(final K key, final V value) {
+        final long now = System.nanoTime();
+        final Reference created = new Reference(key, value, now);
+        final Reference reference = references.compute(key, (k, current) -> {
+            if (current == null || current.value != value) return created;
+            current.accessed = now;
+            return current;
+        });
+        if (reference == created) timerWheel.schedule(created, now + delay);
+    }
+
+    /**
+     * Strong reference to a cached value.
+     */
+    private final class Reference implements TimerWheel.Timeout {
+
+        private final K key;
+        private final V value;
+        private volatile long accessed;
+
+        private Reference(final K key, final V value, final long accessed) {
+            this.key = key;
+            this.value = value;
+            this.accessed = accessed;
+        }
+
+        @Override
+        public long expire(final long now) {
+            final long[] next = {-1};
+            references.computeIfPresent(key, (k, current) -> {
+                if (current != this) return current;
+                final long deadline = accessed + delay;
+                if (deadline - now <= 0) return null;
+                next[0] = deadline;
+                return current;
+            });
+            return next[0];
+        }
 
     }
 
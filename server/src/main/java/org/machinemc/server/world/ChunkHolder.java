@@ -0,0 +1,168 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.world;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.server.chunk.ChunkUtils;
+import org.machinemc.server.world.region.LandscapeChunk;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holder of a single chunk of a server world, tracks the lifecycle of the chunk
+ * and the tickets keeping it loaded.
+ * <p>
+ * Holders are managed by the {@link ChunkPipeline} of the world and all changes of
+ * their state and tickets are guarded by it.
+ */
+public class ChunkHolder {
+
+    @Getter
+    private final int chunkX, chunkZ;
+    @Getter
+    private final long index;
+    @Getter
+    private final CompletableFuture<LandscapeChunk> future = new CompletableFuture<>();
+
+    @Getter
+    private volatile State state = State.LOADING;
+    private final int[] tickets = new int[ChunkTicket.values().length];
+    @Getter(AccessLevel.PACKAGE)
+    private int totalTickets;
+    @Getter(AccessLevel.PACKAGE)
+    private long idleSince;
+    private @Nullable LandscapeChunk chunk;
+
+    ChunkHolder(final int chunkX, final int chunkZ, final long now) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        index = ChunkUtils.getChunkIndex(chunkX, chunkZ);
+        idleSince = now;
+    }
+
+    /**
+     * Returns number of tickets of given type the chunk has.
+     * @param ticket type of the ticket
+     * @return number of tickets
+     */
+    public int getTickets(final ChunkTicket ticket) {
+        return tickets[ticket.ordinal()];
+    }
+
+    /**
+     * Adds a ticket to the chunk.
+     * @param ticket type of the ticket
+     */
+    void addTicket(final ChunkTicket ticket) {
+        tickets[ticket.ordinal()]++;
+        totalTickets++;
+        if (state == State.LOADED) state = State.TICKING;
+    }
+
+    /**
+     * Removes a ticket from the chunk.
+     * @param ticket type of the ticket
+     * @param now current time in nanoseconds
+     * @return whether the chunk has no tickets left
+     */
+    boolean removeTicket(final ChunkTicket ticket, final long now) {
+        if (tickets[ticket.ordinal()] == 0) return false;
+        tickets[ticket.ordinal()]--;
+        if (--totalTickets != 0) return false;
+        idleSince = now;
+        if (state == State.TICKING) state = State.LOADED;
+        return true;
+    }
+
+    /**
+     * Marks the chunk as accessed, postponing its unloading.
+     * @param now current time in nanoseconds
+     */
+    void touch(final long now) {
+        idleSince = now;
+    }
+
+    /**
+     * Marks the chunk as loaded.
+     */
+    void loaded() {
+        if (state == State.LOADING) state = totalTickets > 0 ? State.TICKING : State.LOADED;
+    }
+
+    /**
+     * Attaches the chunk loaded from its landscape, the chunk keeps the landscape
+     * open until the holder is unloaded.
+     * @param chunk loaded chunk
+     */
+    void attach(final LandscapeChunk chunk) {
+        if (state == State.UNLOADING) {
+            chunk.release();
+            return;
+        }
+        this.chunk = chunk;
+    }
+
+    /**
+     * Marks the chunk as unloading and releases its landscape.
+     */
+    void unload() {
+        state = State.UNLOADING;
+        if (chunk == null) return;
+        chunk.release();
+        chunk = null;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkHolder("
+                + "x=" + chunkX
+                + ", z=" + chunkZ
+                + ", state=" + state
+                + ", tickets=" + Arrays.toString(tickets)
+                + ')';
+    }
+
+    /**
+     * State of the chunk.
+     */
+    public enum State {
+
+        /**
+         * The chunk is being loaded or generated by the pipeline.
+         */
+        LOADING,
+
+        /**
+         * The chunk is loaded but has no tickets, it will be unloaded unless
+         * it's accessed again or receives a ticket.
+         */
+        LOADED,
+
+        /**
+         * The chunk is loaded and kept loaded by at least one ticket.
+         */
+        TICKING,
+
+        /**
+         * The chunk has been removed from the world and is being unloaded.
+         */
+        UNLOADING
+
+    }
+
+}
@@ -0,0 +1,447 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.world;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import lombok.Synchronized;
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.api.world.generation.GeneratedSection;
+import org.machinemc.server.chunk.ChunkUtils;
+import org.machinemc.server.network.packets.out.play.PacketPlayOutChunkData;
+import org.machinemc.server.world.region.LandscapeChunk;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Staged asynchronous loading of the chunks of a server world.
+ * <p>
+ * Each chunk goes through load, generate and convert stage, serialization
+ * of the chunk packet is the last optional stage. Each stage runs on its own bounded
+ * executor shared by all worlds and concurrent requests for the same chunk share a single future.
+ * <p>
+ * Chunks of the world are kept in {@link ChunkHolder}s until they are unloaded, chunks with
+ * {@link ChunkTicket}s stay loaded and chunks without tickets are unloaded once they are not
+ * accessed for {@link #UNLOAD_DELAY}.
+ * <p>
+ * Threads of the pipeline never wait for the executors, a chunk requested from a pipeline
+ * thread is loaded on that thread, if the chunk is already being loaded, its remaining
+ * stages are run on that thread instead.
+ */
+public class ChunkPipeline {
+
+    private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService LOAD_EXECUTOR = createExecutor("Load", Math.max(2, PROCESSORS / 4));
+    private static final ExecutorService GENERATE_EXECUTOR = createExecutor("Generate", PROCESSORS);
+    private static final ExecutorService CONVERT_EXECUTOR = createExecutor("Convert", Math.max(1, PROCESSORS / 2));
+    private static final ExecutorService SERIALIZE_EXECUTOR = createExecutor("Serialize", Math.max(1, PROCESSORS / 2));
+
+    /**
+     * Load tasks the pipeline threads are waiting for.
+     */
+    private static final Map<Thread, LoadTask> WAITING = new ConcurrentHashMap<>();
+
+    /**
+     * For how long can a chunk without tickets stay loaded after its last access.
+     */
+    public static final long UNLOAD_DELAY = TimeUnit.SECONDS.toNanos(16);
+
+    private final ServerWorld world;
+
+    private final Object lock = new Object();
+    private final Long2ObjectMap<ChunkHolder> holders = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectMap<LoadTask> tasks = new Long2ObjectOpenHashMap<>();
+    private final LongSet idle = new LongLinkedOpenHashSet();
+
+    public ChunkPipeline(final ServerWorld world) {
+        this.world = Objects.requireNonNull(world, "World can not be null");
+    }
+
+    /**
+     * Returns future of the chunk at given coordinates, if the chunk is not
+     * loaded yet, it is loaded by the pipeline.
+     * <p>
+     * If called from a thread of the pipeline, the remaining stages are run on the current
+     * thread to prevent the bounded executors from waiting on themselves, the returned
+     * future is then already completed.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @return future of the chunk
+     */
+    public CompletableFuture<LandscapeChunk> getChunk(final int chunkX, final int chunkZ) {
+        return acquire(chunkX, chunkZ, null).getFuture();
+    }
+
+    /**
+     * Returns holder of the chunk at given coordinates if the chunk is loaded
+     * or being loaded.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @return holder of the chunk
+     */
+    @Synchronized("lock")
+    public Optional<ChunkHolder> getHolder(final int chunkX, final int chunkZ) {
+        return Optional.ofNullable(holders.get(ChunkUtils.getChunkIndex(chunkX, chunkZ)));
+    }
+
+    /**
+     * @return number of chunks loaded or being loaded by the pipeline
+     */
+    @Synchronized("lock")
+    public int getLoadedChunks() {
+        return holders.size();
+    }
+
+    /**
+     * Adds a ticket to the chunk at given coordinates, if the chunk is not
+     * loaded yet, it is loaded by the pipeline.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @param ticket type of the ticket
+     * @return future of the chunk
+     */
+    public CompletableFuture<LandscapeChunk> addTicket(final int chunkX, final int chunkZ, final ChunkTicket ticket) {
+        Objects.requireNonNull(ticket, "Ticket can not be null");
+        return acquire(chunkX, chunkZ, ticket).getFuture();
+    }
+
+    /**
+     * Removes a ticket from the chunk at given coordinates, once the chunk has no
+     * tickets left, it is unloaded after {@link #UNLOAD_DELAY}.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @param ticket type of the ticket
+     */
+    @Synchronized("lock")
+    public void removeTicket(final int chunkX, final int chunkZ, final ChunkTicket ticket) {
+        Objects.requireNonNull(ticket, "Ticket can not be null");
+        final long index = ChunkUtils.getChunkIndex(chunkX, chunkZ);
+        final ChunkHolder holder = holders.get(index);
+        if (holder == null) return;
+        if (holder.removeTicket(ticket, System.nanoTime()))
+            idle.add(index);
+    }
+
+    /**
+     * Unloads loaded chunks that have no tickets and have not been accessed
+     * for {@link #UNLOAD_DELAY}, called once per tick.
+     */
+    @Synchronized("lock")
+    public void unloadIdle() {
+        if (idle.isEmpty()) return;
+        final long now = System.nanoTime();
+        final LongIterator iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            final long index = iterator.nextLong();
+            final ChunkHolder holder = holders.get(index);
+            if (holder == null || holder.getTotalTickets() > 0) {
+                iterator.remove();
+                continue;
+            }
+            if (!holder.getFuture().isDone() || now - holder.getIdleSince() < UNLOAD_DELAY) continue;
+            iterator.remove();
+            holders.remove(index);
+            holder.unload();
+        }
+    }
+
+    /**
+     * Unloads all chunks of the world regardless of their tickets.
+     */
+    @Synchronized("lock")
+    public void unloadAll() {
+        for (final ChunkHolder holder : holders.values())
+            holder.unload();
+        holders.clear();
+        idle.clear();
+    }
+
+    /**
+     * Returns holder of the chunk, if the chunk is not loaded yet new holder
+     * is created and the chunk is loaded.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @param ticket ticket to add to the chunk, null if the chunk is only accessed
+     * @return holder of the chunk
+     */
+    private ChunkHolder acquire(final int chunkX, final int chunkZ, final @Nullable ChunkTicket ticket) {
+        final ChunkHolder holder;
+        final LoadTask task;
+        final boolean created;
+        synchronized (lock) {
+            final long index = ChunkUtils.getChunkIndex(chunkX, chunkZ);
+            final long now = System.nanoTime();
+            final ChunkHolder existing = holders.get(index);
+            if (existing != null) {
+                holder = existing;
+                created = false;
+                holder.touch(now);
+                task = tasks.get(index);
+            } else {
+                holder = new ChunkHolder(chunkX, chunkZ, now);
+                created = true;
+                holders.put(index, holder);
+                task = new LoadTask(holder);
+                tasks.put(index, task);
+            }
+            if (ticket != null) {
+                holder.addTicket(ticket);
+                idle.remove(index);
+            } else if (holder.getTotalTickets() == 0) {
+                idle.add(index);
+            }
+        }
+        if (task == null) return holder;
+        if (Thread.currentThread() instanceof PipelineThread)
+            finishInline(task);
+        else if (created)
+            LOAD_EXECUTOR.execute(() -> runAsync(task));
+        return holder;
+    }
+
+    /**
+     * Runs the next stage of the task on the current executor thread and
+     * schedules the following stage on its executor.
+     * @param task load task
+     */
+    private void runAsync(final LoadTask task) {
+        if (!task.runNext()) return; // the stage is run by other thread, it also finishes the task
+        final Executor executor = switch (task.next) {
+            case LOAD -> LOAD_EXECUTOR;
+            case GENERATE -> GENERATE_EXECUTOR;
+            case CONVERT -> CONVERT_EXECUTOR;
+            case DONE -> null;
+        };
+        if (executor != null) executor.execute(() -> runAsync(task));
+    }
+
+    /**
+     * Runs the remaining stages of the task on the current pipeline thread.
+     * <p>
+     * If other thread is running a stage of the task, the current thread waits only
+     * for that stage, never for a queued stage; if the wait would close a cycle of
+     * pipeline threads waiting on each other, the load fails instead.
+     * @param task load task
+     */
+    private void finishInline(final LoadTask task) {
+        final Thread current = Thread.currentThread();
+        final LoadTask previous = WAITING.put(current, task);
+        try {
+            while (!task.holder.getFuture().isDone()) {
+                if (task.runNext()) continue;
+                if (closesCycle(task, current))
+                    throw new IllegalStateException("Chunk pipeline threads are waiting on each other to load " + task.holder);
+                task.awaitStage();
+            }
+        } finally {
+            if (previous != null) WAITING.put(current, previous);
+            else WAITING.remove(current);
+        }
+    }
+
+    /**
+     * Checks whether waiting for the stage of the task would make the current
+     * thread wait on itself.
+     * @param task task to wait for
+     * @param current current thread
+     * @return whether the wait closes a cycle
+     */
+    private static boolean closesCycle(final LoadTask task, final Thread current) {
+        LoadTask waitedFor = task;
+        for (int depth = 0; depth <= WAITING.size(); depth++) {
+            final Thread runner = waitedFor.runner.get();
+            if (runner == null) return false;
+            if (runner == current) return true;
+            waitedFor = WAITING.get(runner);
+            if (waitedFor == null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns future of the chunk data packet of the chunk at given coordinates,
+     * the packet is serialized on the serialization executor.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @return future of the chunk data packet
+     */
+    public CompletableFuture<PacketPlayOutChunkData> getChunkPacket(final int chunkX, final int chunkZ) {
+        return getChunkPacket(chunkX, chunkZ, null);
+    }
+
+    /**
+     * Returns future of the chunk data packet of the chunk at given coordinates
+     * and adds a ticket to the chunk, the packet is serialized on the serialization executor.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @param ticket ticket to add to the chunk, null if the chunk is only accessed
+     * @return future of the chunk data packet
+     */
+    public CompletableFuture<PacketPlayOutChunkData> getChunkPacket(final int chunkX,
+                                                                    final int chunkZ,
+                                                                    final @Nullable ChunkTicket ticket) {
+        return acquire(chunkX, chunkZ, ticket).getFuture()
+                .thenApplyAsync(LandscapeChunk::getChunkPacket, SERIALIZE_EXECUTOR);
+    }
+
+    /**
+     * Completes the future of a chunk, if the chunk failed to load
+     * its holder is removed.
+     * @param holder holder of the chunk
+     * @param chunk loaded chunk
+     * @param throwable exception thrown while loading the chunk
+     */
+    private void complete(final ChunkHolder holder,
+                          final @Nullable LandscapeChunk chunk,
+                          final @Nullable Throwable throwable) {
+        synchronized (lock) {
+            if (throwable != null) {
+                holders.remove(holder.getIndex(), holder);
+                idle.remove(holder.getIndex());
+                holder.unload();
+            } else {
+                holder.loaded();
+            }
+        }
+        if (throwable != null)
+            holder.getFuture().completeExceptionally(throwable instanceof CompletionException ? throwable.getCause() : throwable);
+        else
+            holder.getFuture().complete(chunk);
+        synchronized (lock) {
+            tasks.remove(holder.getIndex());
+        }
+    }
+
+    /**
+     * Creates new bounded executor for a pipeline stage.
+     * @param stage name of the stage
+     * @param threads number of threads
+     * @return executor
+     */
+    private static ExecutorService createExecutor(final String stage, final int threads) {
+        final AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new PipelineThread(runnable, "Chunk " + stage + " #" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkPipeline("
+                + "world=" + world
+                + ", chunks=" + getLoadedChunks()
+                + ')';
+    }
+
+    /**
+     * Stage of the chunk loading.
+     */
+    private enum Stage {
+        LOAD, GENERATE, CONVERT, DONE
+    }
+
+    /**
+     * Loading of a single chunk split into stages, each stage is run by the
+     * thread that claims it, either a thread of the stage's executor or
+     * a pipeline thread that needs the chunk.
+     */
+    private final class LoadTask {
+
+        private final ChunkHolder holder;
+        private final AtomicReference<Thread> runner = new AtomicReference<>();
+        private volatile Stage next = Stage.LOAD;
+        private @Nullable LandscapeChunk chunk;
+        private @Nullable GeneratedSection[] sections;
+
+        LoadTask(final ChunkHolder holder) {
+            this.holder = holder;
+        }
+
+        /**
+         * Runs the next stage of the task unless other thread is running a stage.
+         * @return whether the stage has been run or the task is already done
+         */
+        boolean runNext() {
+            if (!runner.compareAndSet(null, Thread.currentThread())) return false;
+            try {
+                switch (next) {
+                    case LOAD -> {
+                        chunk = world.loadChunk(holder.getChunkX(), holder.getChunkZ());
+                        synchronized (lock) {
+                            holder.attach(chunk);
+                        }
+                        next = Stage.GENERATE;
+                    }
+                    case GENERATE -> {
+                        sections = world.generateSections(Objects.requireNonNull(chunk));
+                        next = Stage.CONVERT;
+                    }
+                    case CONVERT -> {
+                        world.convertSections(Objects.requireNonNull(chunk), sections);
+                        complete(holder, chunk, null);
+                        next = Stage.DONE;
+                    }
+                    case DONE -> { }
+                }
+            } catch (Throwable throwable) {
+                complete(holder, null, throwable instanceof ExecutionException ? throwable.getCause() : throwable);
+                next = Stage.DONE;
+            } finally {
+                runner.set(null);
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Waits until the thread running a stage of the task finishes it.
+         */
+        synchronized void awaitStage() {
+            try {
+                while (runner.get() != null)
+                    wait();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(exception);
+            }
+        }
+
+    }
+
+    /**
+     * Thread of the chunk pipeline.
+     */
+    private static final class PipelineThread extends Thread {
+
+        PipelineThread(final Runnable task, final String name) {
+            super(task, name);
+        }
+
+    }
+
+}
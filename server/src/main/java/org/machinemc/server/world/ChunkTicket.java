@@ -0,0 +1,41 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.world;
+
+/**
+ * Type of ticket keeping a chunk of a server world loaded.
+ * <p>
+ * Tickets are reference counted, a chunk stays loaded while it has at least one
+ * ticket of any type.
+ * @see ChunkHolder
+ */
+public enum ChunkTicket {
+
+    /**
+     * Chunk is in the view distance of a player.
+     */
+    PLAYER,
+
+    /**
+     * Chunk is in the spawn area of the world.
+     */
+    SPAWN,
+
+    /**
+     * Chunk is kept loaded by a plugin.
+     */
+    PLUGIN
+
+}
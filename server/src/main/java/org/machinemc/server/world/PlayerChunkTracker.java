@@ -0,0 +1,348 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.world;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMaps;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import lombok.Getter;
+import lombok.Synchronized;
+import org.jetbrains.annotations.Nullable;
+import org.machinemc.api.entities.Entity;
+import org.machinemc.api.entities.Player;
+import org.machinemc.api.world.Location;
+import org.machinemc.server.chunk.ChunkUtils;
+import org.machinemc.server.entities.ServerEntity;
+import org.machinemc.server.entities.ServerEntityManager;
+import org.machinemc.server.network.packets.out.play.PacketPlayOutCenterChunk;
+import org.machinemc.server.network.packets.out.play.PacketPlayOutChunkData;
+import org.machinemc.server.network.packets.out.play.PacketPlayOutRemoveEntities;
+import org.machinemc.server.network.packets.out.play.PacketPlayOutUnloadChunk;
+import org.machinemc.server.world.region.LandscapeHelper;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Tracks chunks loaded by a single player in a world.
+ * <p>
+ * Chunks in the player's view distance are sent nearest first, at most
+ * {@link org.machinemc.api.file.ServerProperties#getChunksPerTick()} each tick, chunks
+ * leaving the view distance are unloaded.
+ * <p>
+ * Chunks are first requested from the pipeline and become loaded by the player
+ * once they are sent to it, each request is tagged with a generation, so only the
+ * latest request of a chunk is delivered. Chunks that failed to load are requested again
+ * with an increasing delay, after {@link #MAX_LOAD_ATTEMPTS} failed attempts the tracker
+ * gives up on the chunk until it leaves the view distance.
+ * <p>
+ * Each chunk requested or loaded by the player holds a {@link ChunkTicket#PLAYER} ticket
+ * until it is unloaded from the player, the player views all entities in the
+ * chunks sent to it. Entities of a chunk are spawned after the chunk is sent
+ * and despawned with a single packet when the chunk is unloaded.
+ */
+public class PlayerChunkTracker {
+
+    /**
+     * How many ticks worth of chunks can be requested from the pipeline before
+     * the tracker waits for them to be sent.
+     */
+    private static final int MAX_IN_FLIGHT_TICKS = 4;
+
+    /**
+     * How many times the tracker tries to load a chunk before it gives up.
+     */
+    private static final int MAX_LOAD_ATTEMPTS = 5;
+
+    /**
+     * Delay in ticks before the first retry of a chunk that failed to load,
+     * doubled with each following attempt.
+     */
+    private static final int RETRY_DELAY_TICKS = 20;
+
+    @Getter
+    private final ServerWorld world;
+    @Getter
+    private final Player player;
+
+    private final LongSet loaded = new LongOpenHashSet();
+    private final Long2IntMap requested = new Long2IntOpenHashMap();
+    private int generation;
+    private final Long2IntMap failures = new Long2IntOpenHashMap();
+    private final Long2LongMap retries = new Long2LongOpenHashMap();
+    private long ticks;
+    private final LongArrayList queue = new LongArrayList();
+    private int queueIndex;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @Getter
+    private int centerX = Integer.MIN_VALUE, centerZ = Integer.MIN_VALUE;
+    @Getter
+    private int viewDistance = -1;
+    private boolean closed;
+
+    public PlayerChunkTracker(final ServerWorld world, final Player player) {
+        this.world = Objects.requireNonNull(world, "World can not be null");
+        this.player = Objects.requireNonNull(player, "Player can not be null");
+    }
+
+    /**
+     * Updates the chunks of the player, called once per tick.
+     */
+    @Synchronized
+    public void tick() {
+        if (closed) return;
+        ticks++;
+        final Location location = player.getLocation();
+        final int chunkX = ChunkUtils.getChunkCoordinate((int) Math.floor(location.getX()));
+        final int chunkZ = ChunkUtils.getChunkCoordinate((int) Math.floor(location.getZ()));
+        final int viewDistance = getEffectiveViewDistance();
+
+        if (chunkX != centerX || chunkZ != centerZ) {
+            player.sendPacket(new PacketPlayOutCenterChunk(chunkX, chunkZ));
+            centerX = chunkX;
+            centerZ = chunkZ;
+            this.viewDistance = viewDistance;
+            world.prefetchRegions(chunkX, chunkZ, viewDistance + LandscapeHelper.PREFETCH_DISTANCE);
+            update();
+        } else if (viewDistance != this.viewDistance) {
+            this.viewDistance = viewDistance;
+            update();
+        }
+
+        queueRetries();
+        sendQueued();
+    }
+
+    /**
+     * Unloads all chunks of the player and stops the tracker.
+     */
+    @Synchronized
+    public void unloadAll() {
+        closed = true;
+        queue.clear();
+        queueIndex = 0;
+        final boolean open = player.getConnection().isOpen();
+        for (final long index : requested.keySet())
+            world.getChunkPipeline().removeTicket(getX(index), getZ(index), ChunkTicket.PLAYER);
+        requested.clear();
+        failures.clear();
+        retries.clear();
+        final LongIterator iterator = loaded.iterator();
+        while (iterator.hasNext()) {
+            final long index = iterator.nextLong();
+            world.getChunkPipeline().removeTicket(getX(index), getZ(index), ChunkTicket.PLAYER);
+            forEntitiesInChunk(index, entity -> entity.removeViewer(player));
+            if (open) player.sendPacket(new PacketPlayOutUnloadChunk(getX(index), getZ(index)));
+        }
+        loaded.clear();
+    }
+
+    /**
+     * @return view distance of the player limited by the view distance of the server
+     */
+    public int getEffectiveViewDistance() {
+        final int serverDistance = world.getServer().getProperties().getViewDistance();
+        final int playerDistance = player.getViewDistance();
+        if (playerDistance <= 0) return serverDistance;
+        return Math.min(playerDistance, serverDistance);
+    }
+
+    /**
+     * Unloads chunks that left the view distance and queues the
+     * missing chunks in the view distance nearest first.
+     */
+    private void update() {
+        final IntArrayList despawned = new IntArrayList();
+        final LongIterator iterator = loaded.iterator();
+        while (iterator.hasNext()) {
+            final long index = iterator.nextLong();
+            final int x = getX(index);
+            final int z = getZ(index);
+            if (isInRange(x, z)) continue;
+            iterator.remove();
+            world.getChunkPipeline().removeTicket(x, z, ChunkTicket.PLAYER);
+            forEntitiesInChunk(index, entity -> {
+                if (entity.removeViewer(player)) despawned.add(entity.getEntityID());
+            });
+            player.sendPacket(new PacketPlayOutUnloadChunk(x, z));
+        }
+        if (!despawned.isEmpty()) player.sendPacket(new PacketPlayOutRemoveEntities(despawned.toIntArray()));
+
+        // requests of chunks that left the view distance are dropped, the client never received them
+        final LongIterator requests = requested.keySet().iterator();
+        while (requests.hasNext()) {
+            final long index = requests.nextLong();
+            if (isInRange(getX(index), getZ(index))) continue;
+            requests.remove();
+            world.getChunkPipeline().removeTicket(getX(index), getZ(index), ChunkTicket.PLAYER);
+        }
+
+        // failures of chunks that left the view distance are forgotten
+        final LongIterator failed = failures.keySet().iterator();
+        while (failed.hasNext()) {
+            final long index = failed.nextLong();
+            if (isInRange(getX(index), getZ(index))) continue;
+            failed.remove();
+            retries.remove(index);
+        }
+
+        queue.clear();
+        queueIndex = 0;
+        for (int x = centerX - viewDistance; x <= centerX + viewDistance; x++) {
+            for (int z = centerZ - viewDistance; z <= centerZ + viewDistance; z++) {
+                final long index = ChunkUtils.getChunkIndex(x, z);
+                if (loaded.contains(index) || requested.containsKey(index)) continue;
+                if (retries.containsKey(index) || failures.get(index) >= MAX_LOAD_ATTEMPTS) continue;
+                queue.add(index);
+            }
+        }
+        queue.sort((first, second) -> Integer.compare(distanceSquared(first), distanceSquared(second)));
+    }
+
+    /**
+     * Queues chunks that failed to load once their retry delay has passed.
+     */
+    private void queueRetries() {
+        if (retries.isEmpty()) return;
+        final ObjectIterator<Long2LongMap.Entry> iterator = Long2LongMaps.fastIterator(retries);
+        while (iterator.hasNext()) {
+            final Long2LongMap.Entry entry = iterator.next();
+            if (entry.getLongValue() > ticks) continue;
+            iterator.remove();
+            queue.add(entry.getLongKey());
+        }
+    }
+
+    /**
+     * Requests next queued chunks from the chunk pipeline, limited by the
+     * maximum number of chunks per tick.
+     */
+    private void sendQueued() {
+        final int limit = Math.max(1, world.getServer().getProperties().getChunksPerTick());
+        int sent = 0;
+        while (queueIndex < queue.size() && sent < limit && inFlight.get() < limit * MAX_IN_FLIGHT_TICKS) {
+            final long index = queue.getLong(queueIndex++);
+            if (loaded.contains(index) || requested.containsKey(index)) continue;
+            final int requestGeneration = ++generation;
+            requested.put(index, requestGeneration);
+            inFlight.incrementAndGet();
+            world.getChunkPipeline().getChunkPacket(getX(index), getZ(index), ChunkTicket.PLAYER).whenComplete((packet, throwable) -> {
+                inFlight.decrementAndGet();
+                deliver(index, requestGeneration, packet, throwable);
+            });
+            sent++;
+        }
+    }
+
+    /**
+     * Sends the chunk to the player if it's the latest request of the chunk,
+     * requests dropped after the chunk left the view distance are ignored.
+     * <p>
+     * Chunks that failed to load are retried after a delay, only the first failure
+     * of a chunk is reported to the exception handler.
+     * @param index index of the chunk
+     * @param requestGeneration generation of the request
+     * @param packet chunk packet
+     * @param throwable exception thrown while loading the chunk
+     */
+    @Synchronized
+    private void deliver(final long index,
+                         final int requestGeneration,
+                         final @Nullable PacketPlayOutChunkData packet,
+                         final @Nullable Throwable throwable) {
+        if (closed || requested.get(index) != requestGeneration) return;
+        requested.remove(index);
+        if (throwable != null) {
+            // holder of the chunk has been removed together with the ticket
+            final int attempts = failures.get(index) + 1;
+            failures.put(index, attempts);
+            if (attempts == 1) world.getServer().getExceptionHandler().handle(throwable);
+            if (attempts < MAX_LOAD_ATTEMPTS) {
+                retries.put(index, ticks + ((long) RETRY_DELAY_TICKS << (attempts - 1)));
+                return;
+            }
+            world.getServer().getConsole().warning("Failed to load chunk " + getX(index) + ", " + getZ(index)
+                    + " for player " + player.getName() + " after " + attempts + " attempts");
+            return;
+        }
+        failures.remove(index);
+        loaded.add(index);
+        if (!player.getConnection().isOpen()) return;
+        player.sendPacket(packet);
+        forEntitiesInChunk(index, entity -> entity.addViewer(player));
+    }
+
+    /**
+     * Checks whether a chunk is loaded by the player.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @return whether the chunk is loaded
+     */
+    @Synchronized
+    public boolean isLoaded(final int chunkX, final int chunkZ) {
+        return loaded.contains(ChunkUtils.getChunkIndex(chunkX, chunkZ));
+    }
+
+    /**
+     * Runs an action for each entity in a chunk.
+     * @param index index of the chunk
+     * @param action action
+     */
+    private void forEntitiesInChunk(final long index, final Consumer<ServerEntity> action) {
+        if (!(world.getServer().getEntityManager() instanceof ServerEntityManager entityManager)) return;
+        for (final Entity entity : entityManager.getEntitiesInChunk(world, getX(index), getZ(index))) {
+            if (entity instanceof ServerEntity serverEntity) action.accept(serverEntity);
+        }
+    }
+
+    private boolean isInRange(final int chunkX, final int chunkZ) {
+        return Math.abs(chunkX - centerX) <= viewDistance && Math.abs(chunkZ - centerZ) <= viewDistance;
+    }
+
+    private int distanceSquared(final long index) {
+        final int dx = getX(index) - centerX;
+        final int dz = getZ(index) - centerZ;
+        return dx * dx + dz * dz;
+    }
+
+    private static int getX(final long index) {
+        return (int) (index >> 32);
+    }
+
+    private static int getZ(final long index) {
+        return (int) index;
+    }
+
+    @Override
+    public String toString() {
+        return "PlayerChunkTracker("
+                + "player=" + player
+                + ", center=" + centerX + ", " + centerZ
+                + ", viewDistance=" + viewDistance
+                + ", loaded=" + loaded.size()
+                + ')';
+    }
+
+}
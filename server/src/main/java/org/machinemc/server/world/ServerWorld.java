@@ -14,16 +14,18 @@
  */
 package org.machinemc.server.world;
 
-import com.google.common.cache.Cache;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import lombok.Getter;
 import lombok.Synchronized;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
 import org.machinemc.api.Server;
 import org.machinemc.api.chunk.Chunk;
 import org.machinemc.api.chunk.Section;
 import org.machinemc.api.entities.Entity;
 import org.machinemc.api.entities.Player;
-import org.machinemc.api.server.schedule.Scheduler;
+import org.machinemc.api.file.ServerProperties;
 import org.machinemc.api.utils.LazyNamespacedKey;
 import org.machinemc.api.utils.NamespacedKey;
 import org.machinemc.api.world.*;
@@ -42,8 +44,9 @@ import org.machinemc.server.Machine;
 import org.machinemc.server.chunk.ChunkSection;
 import org.machinemc.server.chunk.ChunkUtils;
 import org.machinemc.server.file.WorldJSON;
+import org.machinemc.server.tick.TickScheduler;
+import org.machinemc.server.tick.Tickable;
 import org.machinemc.server.utils.FileUtils;
-import org.machinemc.server.utils.WeaklyTimedCache;
 import org.machinemc.server.world.blocks.WorldBlockManager;
 import org.machinemc.server.world.generation.StonePyramidGenerator;
 import org.machinemc.server.world.region.DefaultLandscapeHandler;
@@ -54,17 +57,25 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
 
 import static org.machinemc.server.chunk.ChunkUtils.getSectionRelativeCoordinate;
 
 /**
  * Server with a folder in the main server directory.
  */
-public class ServerWorld extends AbstractWorld {
+public class ServerWorld extends AbstractWorld implements Tickable {
 
     public static final String DEFAULT_WORLD_FOLDER = "level";
 
+    /**
+     * Radius of chunks around the world spawn kept loaded by the spawn tickets.
+     */
+    public static final int SPAWN_CHUNK_RADIUS = 1;
+
     @Getter
     private final File folder;
     private final File regionFolder;
@@ -78,8 +89,9 @@ public class ServerWorld extends AbstractWorld {
     @Getter
     private final WorldBlockManager worldBlockManager;
 
-    // TODO configurable delay
-    private final Cache<Long, LandscapeChunk> cachedChunks = new WeaklyTimedCache<>(16, TimeUnit.SECONDS);
+    @Getter
+    private final ChunkPipeline chunkPipeline = new ChunkPipeline(this);
+    private final Map<Player, PlayerChunkTracker> chunkTrackers = new ConcurrentHashMap<>();
 
     /**
      * Creates default server world.
@@ -120,8 +132,8 @@ public class ServerWorld extends AbstractWorld {
                 new DefaultLandscapeHandler(
                         server.getBlockManager(),
                         server.getBiomeManager(),
-                        false,  // TODO auto save should be configurable
-                        256)  // TODO auto save limit should be configurable
+                        server.getProperties().isAutoSave() && server.getProperties().getAutoSaveLimit() > 0,
+                        server.getProperties().getAutoSaveLimit())
         );
         worldBlockManager = new WorldBlockManager(this, position -> {
             getChunk(position); // loads the chunk in case it's not generated yet
@@ -175,6 +187,7 @@ public class ServerWorld extends AbstractWorld {
         if (!worldJSONFile.exists())
             saveWorldJSON();
         loaded = true;
+        forSpawnChunks((chunkX, chunkZ) -> chunkPipeline.addTicket(chunkX, chunkZ, ChunkTicket.SPAWN));
         getServer().getConsole().info("Loaded world '" + getName() + "'");
     }
 
@@ -183,7 +196,9 @@ public class ServerWorld extends AbstractWorld {
     public void unload() throws IOException {
         if (!loaded) throw new UnsupportedOperationException("The world has not been loaded yet");
         loaded = false;
+        forSpawnChunks((chunkX, chunkZ) -> chunkPipeline.removeTicket(chunkX, chunkZ, ChunkTicket.SPAWN));
         save();
+        chunkPipeline.unloadAll();
         landscapeHelper.close();
         getServer().getConsole().info("Unloaded world '" + getName() + "'");
     }
@@ -192,75 +207,124 @@ public class ServerWorld extends AbstractWorld {
     @Synchronized
     public void save() {
         getServer().getConsole().info("Saving world '" + getName() + "'...");
-        landscapeHelper.flush();
+        landscapeHelper.flushAsync().join();
         saveWorldJSON();
         getServer().getConsole().info("Saved world '" + getName() + "'");
     }
 
-    private void saveWorldJSON() {
-        WorldJSON.fromWorld(this).save(worldJSONFile);
+    /**
+     * Runs an action for each chunk in the spawn area of the world.
+     * @param action action
+     */
+    private void forSpawnChunks(final BiConsumer<Integer, Integer> action) {
+        final int spawnX = ChunkUtils.getChunkCoordinate((int) Math.floor(getWorldSpawn().getX()));
+        final int spawnZ = ChunkUtils.getChunkCoordinate((int) Math.floor(getWorldSpawn().getZ()));
+        for (int x = spawnX - SPAWN_CHUNK_RADIUS; x <= spawnX + SPAWN_CHUNK_RADIUS; x++) {
+            for (int z = spawnZ - SPAWN_CHUNK_RADIUS; z <= spawnZ + SPAWN_CHUNK_RADIUS; z++)
+                action.accept(x, z);
+        }
     }
 
     /**
-     * Loads the player to the world.
-     * @param player player to load
+     * Ticks all entities and player chunk trackers of the world, unloads
+     * the idle chunks, closes the idle regions and saves the changed regions.
+     * <p>
+     * Entities are grouped by the regions they are in and regions are
+     * ticked in parallel in four passes, in each pass only regions with the same
+     * parity of coordinates are ticked, so two neighbouring regions never tick at the same time.
+     * @param tick number of the current tick
      */
-    public void loadPlayer(final Player player) {
-        Objects.requireNonNull(player, "Player to load can not be null");
-        // TODO this should take player's view distance
-        final Scheduler scheduler = getServer().getScheduler();
-        final int chunksPerTask = 10;
-        final int tasks = 3;
-        for (int i = 0; i <= tasks; i++) {
-            final int index = i;
-            Scheduler.task((input, session) -> {
-                final int start = index * chunksPerTask;
-                final int end = (index + 1) * chunksPerTask;
-                for (int j = start; j < end; j++) {
-                    final int[] coordinates = getSpiralCoordinates(j);
-                    final Chunk chunk = getChunk(coordinates[0], coordinates[1]);
-                    chunk.sendChunk(player);
-                }
-                return null;
-            }).async().run(scheduler);
+    @Override
+    public void tick(final long tick) {
+        tickEntities(tick);
+        chunkPipeline.unloadIdle();
+        landscapeHelper.closeIdle();
+        final ServerProperties properties = getServer().getProperties();
+        if (properties.isAutoSave()) {
+            // the tps of the scheduler is validated, unlike the one in the server properties
+            final int tps = ((TickScheduler) getServer().getScheduler()).getTps();
+            final int interval = properties.getAutoSaveInterval() * tps;
+            final long bytesPerTick = properties.getAutoSaveThroughput() * 1024L * 1024L / tps;
+            landscapeHelper.autoSave(tick, interval, bytesPerTick, tps);
+        }
+        for (final PlayerChunkTracker tracker : chunkTrackers.values()) {
+            try {
+                tracker.tick();
+            } catch (Throwable throwable) {
+                getServer().getExceptionHandler().handle(throwable);
+            }
         }
     }
 
     /**
-     * Returns a x;y coordinates of a spiral.
-     * @param orderIndex index
-     * @return x and y coordinates in the spiral
+     * Ticks all entities of the world.
+     * @param tick number of the current tick
      */
-    private static int[] getSpiralCoordinates(final int orderIndex) {
-        int x = 0;
-        int y = 0;
-        int currentOrder = 1;
-        int currentLength = 1;
-        int currentDirection = 0;
-
-        while (currentOrder < orderIndex) {
-            for (int i = 0; i < currentLength; i++) {
-                if (currentOrder == orderIndex) {
-                    break;
-                }
-                if (currentDirection == 0) {
-                    x++;
-                } else if (currentDirection == 1) {
-                    y++;
-                } else if (currentDirection == 2) {
-                    x--;
-                } else if (currentDirection == 3) {
-                    y--;
-                }
-                currentOrder++;
-            }
-            if (currentDirection == 1 || currentDirection == 3) {
-                currentLength++;
+    private void tickEntities(final long tick) {
+        final Long2ObjectMap<List<Tickable>> regions = new Long2ObjectOpenHashMap<>();
+        for (final Entity entity : entityList) {
+            if (!(entity instanceof Tickable tickable)) continue;
+            final Location location = entity.getLocation();
+            final int chunkX = ChunkUtils.getChunkCoordinate((int) Math.floor(location.getX()));
+            final int chunkZ = ChunkUtils.getChunkCoordinate((int) Math.floor(location.getZ()));
+            regions.computeIfAbsent(LandscapeHelper.regionIndex(chunkX, chunkZ), index -> new ArrayList<>()).add(tickable);
+        }
+        if (regions.isEmpty()) return;
+
+        if (!(getServer().getScheduler() instanceof TickScheduler scheduler) || regions.size() == 1) {
+            for (final List<Tickable> region : regions.values())
+                tickRegion(region, tick);
+            return;
+        }
+
+        final List<List<Runnable>> passes = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        for (final Long2ObjectMap.Entry<List<Tickable>> entry : regions.long2ObjectEntrySet()) {
+            final long index = entry.getLongKey();
+            final int pass = (int) ((index >> 32) & 1) | (int) ((index & 1) << 1);
+            passes.get(pass).add(() -> tickRegion(entry.getValue(), tick));
+        }
+        for (final List<Runnable> pass : passes)
+            scheduler.runParallel(pass);
+    }
+
+    /**
+     * Ticks all tickables in a single region.
+     * @param region tickables of the region
+     * @param tick number of the current tick
+     */
+    private void tickRegion(final List<Tickable> region, final long tick) {
+        for (final Tickable tickable : region) {
+            try {
+                tickable.tick(tick);
+            } catch (Throwable throwable) {
+                getServer().getExceptionHandler().handle(throwable);
             }
-            currentDirection = (currentDirection + 1) % 4;
         }
+    }
 
-        return new int[] {x, y};
+    private void saveWorldJSON() {
+        WorldJSON.fromWorld(this).save(worldJSONFile);
+    }
+
+    /**
+     * Opens the region files within given distance from a chunk in the background.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @param distance distance in chunks
+     * @see LandscapeHelper#prefetch(int, int, int)
+     */
+    public void prefetchRegions(final int chunkX, final int chunkZ, final int distance) {
+        landscapeHelper.prefetch(chunkX, chunkZ, distance);
+    }
+
+    /**
+     * Loads the player to the world, chunks around the player are sent
+     * during the following ticks.
+     * @param player player to load
+     */
+    public void loadPlayer(final Player player) {
+        Objects.requireNonNull(player, "Player to load can not be null");
+        chunkTrackers.computeIfAbsent(player, key -> new PlayerChunkTracker(this, key));
     }
 
     /**
@@ -268,7 +332,25 @@ public class ServerWorld extends AbstractWorld {
      * @param player player to unload
      */
     public void unloadPlayer(final Player player) {
-        // TODO implement player unloading
+        Objects.requireNonNull(player, "Player to unload can not be null");
+        final PlayerChunkTracker tracker = chunkTrackers.remove(player);
+        if (tracker != null) tracker.unloadAll();
+    }
+
+    /**
+     * Returns chunk tracker of a player loaded in this world.
+     * @param player player
+     * @return chunk tracker of the player
+     */
+    public Optional<PlayerChunkTracker> getChunkTracker(final Player player) {
+        return Optional.ofNullable(chunkTrackers.get(player));
+    }
+
+    /**
+     * @return chunk trackers of all players loaded in this world
+     */
+    public @Unmodifiable Collection<PlayerChunkTracker> getChunkTrackers() {
+        return Collections.unmodifiableCollection(chunkTrackers.values());
     }
 
     @Override
@@ -290,83 +372,164 @@ public class ServerWorld extends AbstractWorld {
     }
 
     @Override
-    @Synchronized
     public Chunk getChunk(final int chunkX, final int chunkZ) {
-        try {
-            final long chunkIndex = chunkIndex(chunkX, chunkZ);
-            final LandscapeChunk chunk = cachedChunks.get(chunkIndex,
-                    () -> new LandscapeChunk(this, worldBlockManager, chunkX, chunkZ, landscapeHelper)
-            );
-
-            for (int i = 0; i <= chunk.getMaxSection(); i++) {
-                final int sectionIndex = i;
-                final int ry = getDimensionType().getMinY() + Chunk.CHUNK_SECTION_SIZE * i;
-                final Segment segment = chunk.getSegment(i);
-                if (!segment.isEmpty()) continue; // if the segment has been generated before, skip
+        return chunkPipeline.getChunk(chunkX, chunkZ).join();
+    }
 
-                final GeneratedSection content = generator.populateChunk(chunkX, chunkZ, i, this);
+    /**
+     * Loads the chunk at given coordinates asynchronously, requests
+     * for the same chunk made before it finishes loading share the same future.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @return future of the chunk
+     * @see ChunkPipeline
+     */
+    public CompletableFuture<? extends Chunk> getChunkAsync(final int chunkX, final int chunkZ) {
+        return chunkPipeline.getChunk(chunkX, chunkZ);
+    }
 
-                final BlockType[] blockPalette = content.getBlockPalette();
-                final Biome[] biomePalette = content.getBiomePalette();
+    /**
+     * Loads the chunk from its landscape, first stage of the chunk pipeline.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @return loaded chunk
+     */
+    LandscapeChunk loadChunk(final int chunkX, final int chunkZ) throws ExecutionException {
+        return new LandscapeChunk(this, worldBlockManager, chunkX, chunkZ, landscapeHelper);
+    }
 
-                assert blockPalette.length != 0 && biomePalette.length != 0;
+    /**
+     * Generates the content of all sections of the chunk that have not been
+     * generated before, second stage of the chunk pipeline.
+     * @param chunk chunk to generate
+     * @return generated sections, null for sections that have been generated before
+     */
+    @Nullable GeneratedSection[] generateSections(final LandscapeChunk chunk) {
+        final GeneratedSection[] generated = new GeneratedSection[chunk.getMaxSection() + 1];
+        for (int i = 0; i <= chunk.getMaxSection(); i++) {
+            if (!chunk.getSegment(i).isEmpty()) continue; // if the segment has been generated before, skip
+            generated[i] = generator.populateChunk(chunk.getChunkX(), chunk.getChunkZ(), i, this);
+        }
+        return generated;
+    }
 
-                final short[] blocksData = content.getBlockData();
-                final short[] biomesData = content.getBiomeData();
+    /**
+     * Converts generated sections to the chunk segments and sections,
+     * third stage of the chunk pipeline.
+     * @param chunk chunk the sections were generated for
+     * @param generated generated sections
+     */
+    void convertSections(final LandscapeChunk chunk, final @Nullable GeneratedSection[] generated) {
+        final int chunkX = chunk.getChunkX();
+        final int chunkZ = chunk.getChunkZ();
+        for (int i = 0; i < generated.length; i++) {
+            final GeneratedSection content = generated[i];
+            if (content == null) continue;
+
+            final int sectionIndex = i;
+            final int ry = getDimensionType().getMinY() + Chunk.CHUNK_SECTION_SIZE * i;
+            final Segment segment = chunk.getSegment(i);
+
+            final BlockType[] blockPalette = content.getBlockPalette();
+            final Biome[] biomePalette = content.getBiomePalette();
+
+            assert blockPalette.length != 0 && biomePalette.length != 0;
+
+            final short[] blocksData = content.getBlockData();
+            final short[] biomesData = content.getBiomeData();
+
+            final NBTCompound[] tileEntities = content.getTileEntitiesData();
+
+            // Section is created as well; generated chunks are expected
+            // to be sent to client, if yes the intermediate step
+            // of conversion between Landscape segment and section is
+            // skipped which makes the process of loading newly generated
+            // chunks much faster.
+            final Section section = new ChunkSection(chunk, i,  () -> {
+                chunk.push(segment); // if compound is requested we push the segment in case it's changed later
+                return segment.getDataCompound();
+            });
+
+            // There are multiple block types in the generated section
+            if (blockPalette.length != 1) {
+                segment.setAllBlocks((x, y, z) -> {
+                    final int blockIndex = Section.index(x, y, z);
+                    final BlockType blockType = blockPalette[blocksData[blockIndex]];
+                    final BlockPosition position = new BlockPosition(
+                            Chunk.CHUNK_SIZE_X * chunkX + x,
+                            ry + y,
+                            Chunk.CHUNK_SIZE_Z * chunkZ + z);
+
+                    // Initialization of block entities
+                    if (blockType instanceof BlockEntityType blockEntityType) {
+                        segment.setNBT(x, y, z, initializeTileEntity(
+                                blockEntityType,
+                                position,
+                                tileEntities[blockIndex]));
+                    }
 
-                final NBTCompound[] tileEntities = content.getTileEntitiesData();
+                    // Getting correct visual for the section's block palette
+                    BlockData visual;
+                    if (blockType.hasDynamicVisual()) {
+                        final WorldBlock.State state = new WorldBlock.State(
+                                this,
+                                position,
+                                blockType,
+                                segment.getNBT(x, y, z).clone());
+                        visual = blockType.getBlockData(state);
+                        for (final BlockHandler blockHandler : blockType.getHandlers())
+                            visual = blockHandler.onVisualRequest(state, visual);
+                    } else {
+                        visual = blockType.getBlockData(null);
+                    }
+                    section.getBlockPalette().set(x, y, z, visual.getID());
+
+                    // Setting client visible nbt data for the section
+                    if (blockType instanceof BlockEntityType blockEntityType && blockEntityType.sendsToClient()) {
+                        final WorldBlock.State state = new WorldBlock.State(
+                                this,
+                                position,
+                                blockEntityType,
+                                segment.getNBT(x, y, z).clone());
+                        section.getClientBlockEntities().put(Section.index(x, y, z),
+                                new Section.BlockEntity(
+                                        (byte) x,
+                                        (short) (y + sectionIndex * Chunk.CHUNK_SECTION_SIZE
+                                                + getDimensionType().getMinY()),
+                                        (byte) z,
+                                        blockEntityType.getBlockEntityBase(state)
+                                                .orElseThrow(NullPointerException::new),
+                                        blockEntityType.getClientVisibleNBT(state)
+                                                .orElseThrow(NullPointerException::new)
+                                ));
+                    }
 
-                // Section is created as well; generated chunks are expected
-                // to be sent to client, if yes the intermediate step
-                // of conversion between Landscape segment and section is
-                // skipped which makes the process of loading newly generated
-                // chunks much faster.
-                final Section section = new ChunkSection(chunk, i,  () -> {
-                    segment.push(); // if compound is requested we push the segment in case it's changed later
-                    return segment.getDataCompound();
+                    return blockType.getName().toString();
                 });
 
-                // There are multiple block types in the generated section
-                if (blockPalette.length != 1) {
-                    segment.setAllBlocks((x, y, z) -> {
-                        final int blockIndex = Section.index(x, y, z);
-                        final BlockType blockType = blockPalette[blocksData[blockIndex]];
+            // There is only a single block type in the whole generated section
+            } else {
+                final BlockType blockType = blockPalette[0];
+                segment.fill(blockType.getName().toString()); // we can fill the segment
+
+                // If the block type is block entity we need to initialize
+                // each block in the section, plus in this part
+                // we can set the client visible nbt as well
+                if (blockType instanceof BlockEntityType blockEntityType) {
+                    segment.setAllNBT((x, y, z) -> {
                         final BlockPosition position = new BlockPosition(
                                 Chunk.CHUNK_SIZE_X * chunkX + x,
                                 ry + y,
                                 Chunk.CHUNK_SIZE_Z * chunkZ + z);
+                        final NBTCompound compound = initializeTileEntity(blockEntityType, position,
+                                tileEntities[Section.index(x, y, z)]);
 
-                        // Initialization of block entities
-                        if (blockType instanceof BlockEntityType blockEntityType) {
-                            segment.setNBT(x, y, z, initializeTileEntity(
-                                    blockEntityType,
-                                    position,
-                                    tileEntities[blockIndex]));
-                        }
-
-                        // Getting correct visual for the section's block palette
-                        BlockData visual;
-                        if (blockType.hasDynamicVisual()) {
-                            final WorldBlock.State state = new WorldBlock.State(
-                                    this,
-                                    position,
-                                    blockType,
-                                    segment.getNBT(x, y, z).clone());
-                            visual = blockType.getBlockData(state);
-                            for (final BlockHandler blockHandler : blockType.getHandlers())
-                                visual = blockHandler.onVisualRequest(state, visual);
-                        } else {
-                            visual = blockType.getBlockData(null);
-                        }
-                        section.getBlockPalette().set(x, y, z, visual.getID());
-
-                        // Setting client visible nbt data for the section
-                        if (blockType instanceof BlockEntityType blockEntityType && blockEntityType.sendsToClient()) {
+                        if (blockEntityType.sendsToClient()) {
                             final WorldBlock.State state = new WorldBlock.State(
                                     this,
                                     position,
                                     blockEntityType,
-                                    segment.getNBT(x, y, z).clone());
+                                    compound);
                             section.getClientBlockEntities().put(Section.index(x, y, z),
                                     new Section.BlockEntity(
                                             (byte) x,
@@ -376,95 +539,54 @@ public class ServerWorld extends AbstractWorld {
                                             blockEntityType.getBlockEntityBase(state)
                                                     .orElseThrow(NullPointerException::new),
                                             blockEntityType.getClientVisibleNBT(state)
-                                                    .orElseThrow(NullPointerException::new)
-                                    ));
+                                                    .orElseThrow(NullPointerException::new)));
                         }
 
-                        return blockType.getName().toString();
+                        return compound;
                     });
-
-                // There is only a single block type in the whole generated section
-                } else {
-                    final BlockType blockType = blockPalette[0];
-                    segment.fill(blockType.getName().toString()); // we can fill the segment
-
-                    // If the block type is block entity we need to initialize
-                    // each block in the section, plus in this part
-                    // we can set the client visible nbt as well
-                    if (blockType instanceof BlockEntityType blockEntityType) {
-                        segment.setAllNBT((x, y, z) -> {
-                            final BlockPosition position = new BlockPosition(
-                                    Chunk.CHUNK_SIZE_X * chunkX + x,
-                                    ry + y,
-                                    Chunk.CHUNK_SIZE_Z * chunkZ + z);
-                            final NBTCompound compound = initializeTileEntity(blockEntityType, position,
-                                    tileEntities[Section.index(x, y, z)]);
-
-                            if (blockEntityType.sendsToClient()) {
-                                final WorldBlock.State state = new WorldBlock.State(
-                                        this,
-                                        position,
-                                        blockEntityType,
-                                        compound);
-                                section.getClientBlockEntities().put(Section.index(x, y, z),
-                                        new Section.BlockEntity(
-                                                (byte) x,
-                                                (short) (y + sectionIndex * Chunk.CHUNK_SECTION_SIZE
-                                                        + getDimensionType().getMinY()),
-                                                (byte) z,
-                                                blockEntityType.getBlockEntityBase(state)
-                                                        .orElseThrow(NullPointerException::new),
-                                                blockEntityType.getClientVisibleNBT(state)
-                                                        .orElseThrow(NullPointerException::new)));
-                            }
-
-                            return compound;
-                        });
-                    }
-
-                    // If the block type has dynamic visual,
-                    // each block needs to be handled separately
-                    if (blockType.hasDynamicVisual()) {
-                        segment.getAllNBT((x, y, z, nbt) -> {
-                            final WorldBlock.State state = new WorldBlock.State(this,
-                                    new BlockPosition(Chunk.CHUNK_SIZE_X * chunkX + x,
-                                            ry + y,
-                                            Chunk.CHUNK_SIZE_Z * chunkZ + z),
-                                    blockType,
-                                    segment.getNBT(x, y, z).clone());
-                            BlockData visual = blockType.getBlockData(state);
-                            for (final BlockHandler blockHandler : blockType.getHandlers())
-                                visual = blockHandler.onVisualRequest(state, visual);
-                            section.getBlockPalette().set(x, y, z, visual.getID()
-                            );
-                        });
-                    } else {
-                        section.getBlockPalette().fill(blockType.getBlockData(null).getID());
-                    }
-
                 }
 
-                // Biome generation
-                if (biomePalette.length != 1) {
-                    final Map<Biome, Integer> idMap = new HashMap<>();
-                    for (final Biome biome : biomePalette)
-                        idMap.put(biome, getServer().getBiomeManager().getBiomeID(biome));
-                    segment.setAllBiomes((x, y, z) -> {
-                        final Biome biome = biomePalette[biomesData[Section.index(x, y, z)]];
-                        section.getBlockPalette().set(x, y, z, idMap.get(biome));
-                        return biome.getName().toString();
+                // If the block type has dynamic visual,
+                // each block needs to be handled separately
+                if (blockType.hasDynamicVisual()) {
+                    segment.getAllNBT((x, y, z, nbt) -> {
+                        final WorldBlock.State state = new WorldBlock.State(this,
+                                new BlockPosition(Chunk.CHUNK_SIZE_X * chunkX + x,
+                                        ry + y,
+                                        Chunk.CHUNK_SIZE_Z * chunkZ + z),
+                                blockType,
+                                segment.getNBT(x, y, z).clone());
+                        BlockData visual = blockType.getBlockData(state);
+                        for (final BlockHandler blockHandler : blockType.getHandlers())
+                            visual = blockHandler.onVisualRequest(state, visual);
+                        section.getBlockPalette().set(x, y, z, visual.getID()
+                        );
                     });
                 } else {
-                    segment.fillBiome(biomePalette[0].getName().toString());
-                    section.getBiomePalette().fill(getServer().getBiomeManager().getBiomeID(biomePalette[0]));
+                    section.getBlockPalette().fill(blockType.getBlockData(null).getID());
                 }
 
-                chunk.setSection(i, section); // we set the section manually
-                segment.push(); // TODO should be configurable (saving of generated chunks not touched by player)
             }
-            return chunk;
-        } catch (Exception exception) {
-            throw new RuntimeException(exception);
+
+            // Biome generation
+            if (biomePalette.length != 1) {
+                final Map<Biome, Integer> idMap = new HashMap<>();
+                for (final Biome biome : biomePalette)
+                    idMap.put(biome, getServer().getBiomeManager().getBiomeID(biome));
+                segment.setAllBiomes((x, y, z) -> {
+                    final Biome biome = biomePalette[biomesData[Section.index(x, y, z)]];
+                    section.getBlockPalette().set(x, y, z, idMap.get(biome));
+                    return biome.getName().toString();
+                });
+            } else {
+                segment.fillBiome(biomePalette[0].getName().toString());
+                section.getBiomePalette().fill(getServer().getBiomeManager().getBiomeID(biomePalette[0]));
+            }
+
+            chunk.setSection(i, section); // we set the section manually
+            // generated segments not touched by a player can be generated again instead of being saved
+            if (getServer().getProperties().isSaveGeneratedChunks())
+                chunk.push(segment);
         }
     }
 
@@ -487,13 +609,4 @@ public class ServerWorld extends AbstractWorld {
         return state.compound();
     }
 
-    /**
-     * @param chunkX x coordinate of the chunk
-     * @param chunkZ z coordinate of the chunk
-     * @return unique index for a chunk at given coordinates
-     */
-    private long chunkIndex(final int chunkX, final int chunkZ) {
-        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
-    }
-
 }
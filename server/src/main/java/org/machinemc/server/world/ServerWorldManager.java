@@ -19,6 +19,7 @@ import org.machinemc.api.Server;
 import org.machinemc.api.utils.NamespacedKey;
 import org.machinemc.api.world.World;
 import org.machinemc.api.world.WorldManager;
+import org.machinemc.server.tick.Tickable;
 
 import java.util.Collections;
 import java.util.Objects;
@@ -29,7 +30,7 @@ import java.util.concurrent.CopyOnWriteArraySet;
 /**
  * Default implementation of the world manager.
  */
-public class ServerWorldManager implements WorldManager {
+public class ServerWorldManager implements WorldManager, Tickable {
 
     private final Set<World> worlds = new CopyOnWriteArraySet<>();
     @Getter
@@ -75,6 +76,14 @@ public class ServerWorldManager implements WorldManager {
         return Collections.unmodifiableSet(worlds);
     }
 
+    @Override
+    public void tick(final long tick) {
+        for (final World world : worlds) {
+            if (!(world instanceof Tickable tickable) || !world.isLoaded()) continue;
+            tickable.tick(tick);
+        }
+    }
+
     @Override
     public String toString() {
         return "ServerWorldManager("
@@ -54,6 +54,7 @@ public class LandscapeChunk extends WorldChunk {
 
     private final int worldX = chunkX * 16, worldZ = chunkZ * 16;
     private final Landscape landscape;
+    private final LandscapeHelper helper;
     private final WorldBlockManager worldBlockManager;
     private final int segmentX;
     private final int segmentZ;
@@ -69,7 +70,8 @@ public class LandscapeChunk extends WorldChunk {
         Objects.requireNonNull(worldBlockManager, "World block manager can not be null");
         Objects.requireNonNull(helper, "Landscape helper can not be null");
 
-        landscape = helper.get(chunkX * 16, chunkZ * 16);
+        landscape = helper.acquire(chunkX, chunkZ);
+        this.helper = helper;
         this.worldBlockManager = worldBlockManager;
         segmentX = getSectionRelativeCoordinate(chunkX);
         segmentZ = getSectionRelativeCoordinate(chunkZ);
@@ -84,6 +86,24 @@ public class LandscapeChunk extends WorldChunk {
         return landscape.loadSegment(segmentX, index, segmentZ);
     }
 
+    /**
+     * Pushes changes of a segment of this chunk to its landscape and marks
+     * the landscape as changed for the next auto save.
+     * @param segment segment to push
+     */
+    public void push(final Segment segment) {
+        segment.push();
+        helper.markDirty(chunkX, chunkZ, segment);
+    }
+
+    /**
+     * Releases the reference of this chunk to its landscape, called
+     * once when the chunk is unloaded.
+     */
+    public void release() {
+        helper.release(chunkX, chunkZ);
+    }
+
     @Override
     @Synchronized
     public WorldBlock getBlock(final int x, final int y, final int z) {
@@ -125,7 +145,8 @@ public class LandscapeChunk extends WorldChunk {
         if (section != null)
             setSectionBlock(section, sectionIndex, x, sectionY, z, blockType);
 
-        segment.push();
+        invalidateChunkPacket();
+        push(segment);
     }
 
     @Override
@@ -164,7 +185,8 @@ public class LandscapeChunk extends WorldChunk {
             setSectionBlock(section, sectionIndex, x, sectionY, z, blockType);
         }
 
-        segment.push();
+        invalidateChunkPacket();
+        push(segment);
     }
 
     @Override
@@ -191,7 +213,8 @@ public class LandscapeChunk extends WorldChunk {
             setSectionBlock(section, sectionIndex, x, sectionY, z, blockType);
         }
 
-        segment.push();
+        invalidateChunkPacket();
+        push(segment);
     }
 
     @Override
@@ -240,7 +263,8 @@ public class LandscapeChunk extends WorldChunk {
                     getServer().getBiomeManager().getBiomeID(biome)
             ); // biome palette's dimension is 4 (xyz/4)
 
-        segment.push();
+        invalidateChunkPacket();
+        push(segment);
     }
 
     /**
@@ -273,7 +297,7 @@ public class LandscapeChunk extends WorldChunk {
             return sections.get(index, () -> {
                 final Segment segment = getSegment(index);
                 final ChunkSection section = new ChunkSection(this, index, () -> {
-                    segment.push(); // if compound is requested we push the segment in case it's changed later
+                    push(segment); // if compound is requested we push the segment in case it's changed later
                     return segment.getDataCompound();
                 });
 
@@ -304,6 +328,7 @@ public class LandscapeChunk extends WorldChunk {
     public void setSection(final int index, final Section section) {
         Objects.requireNonNull(section);
         sections.put(index, section);
+        invalidateChunkPacket();
     }
 
     /**
@@ -501,9 +526,10 @@ public class LandscapeChunk extends WorldChunk {
         for (int i = getMinSection(); i <= getMaxSection(); i++) {
             final Segment segment = getSegment(i);
             segment.reset();
-            segment.push();
+            push(segment);
         }
         sections.invalidateAll();
+        invalidateChunkPacket();
     }
 
     @Override
@@ -14,76 +14,115 @@
  */
 package org.machinemc.server.world.region;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import lombok.Getter;
-import org.machinemc.api.server.schedule.Scheduler;
 import org.machinemc.api.world.BlockPosition;
 import org.machinemc.api.world.World;
 import org.machinemc.landscape.Landscape;
 import org.machinemc.landscape.LandscapeHandler;
+import org.machinemc.landscape.Segment;
 import org.machinemc.server.chunk.ChunkUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Objects;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Handles landscape region folder of a world.
+ * <p>
+ * Opening of the region files ahead of time and flushing of the regions
+ * runs on a dedicated I/O executor shared by all worlds, so the disk access
+ * does not block the threads accessing the world. I/O of a single landscape
+ * always runs in the order it has been scheduled in.
+ * <p>
+ * Each loaded chunk holds a reference to the landscape of its region, landscapes stay open
+ * while they are referenced and are closed once they have not been referenced
+ * nor accessed for {@link #IDLE_DELAY}.
  */
 public class LandscapeHelper {
 
+    /**
+     * Distance in chunks from the edge of a region from which the neighbouring
+     * regions are prefetched.
+     */
+    public static final int PREFETCH_DISTANCE = 4;
+
+    /**
+     * Estimated number of bytes written to the disk for a single changed segment,
+     * used to keep the auto save within its throughput budget.
+     */
+    public static final int SEGMENT_SIZE_ESTIMATE = 8 * 1024;
+
+    /**
+     * Time in nanoseconds after which landscapes without references are closed.
+     */
+    public static final long IDLE_DELAY = TimeUnit.MINUTES.toNanos(1);
+
+    private static final ExecutorService IO_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 4),
+            Thread.ofPlatform().name("Landscape I/O #", 1).daemon().factory()
+    );
+
     @Getter
     private final World source;
-    private final Scheduler scheduler;
     private final File regionFolder;
     private final short height;
     @Getter
     private final LandscapeHandler handler;
 
-    private final Cache<Long, Landscape> landscapes;
+    private final Map<Long, Region> regions = new HashMap<>();
+    private final Set<Long> prefetching = ConcurrentHashMap.newKeySet();
+    private final Map<Region, DirtyRegion> dirty = new LinkedHashMap<>();
+    private volatile long currentTick;
+    private long budget;
 
     public LandscapeHelper(final World source, final File regionFolder, final LandscapeHandler handler) {
         Objects.requireNonNull(source);
         Objects.requireNonNull(regionFolder);
         Objects.requireNonNull(handler);
         this.source = source;
-        scheduler = source.getServer().getScheduler();
         this.regionFolder = regionFolder;
         height = (short) source.getDimensionType().getHeight();
         this.handler = handler;
-        landscapes = CacheBuilder.newBuilder()
-                .expireAfterAccess(1, TimeUnit.MINUTES)
-                .removalListener(notification -> Scheduler.task((input, session) -> {
-                    if (notification.wasEvicted()) {
-                        final Landscape landscape = (Landscape) notification.getValue();
-                        assert landscape != null;
-                        try {
-                            landscape.flush();
-                            landscape.close();
-                        } catch (Exception exception) {
-                            source.getServerExceptionHandler().handle(exception);
-                        }
-                    }
-                    return null;
-                }).run(scheduler))
-                .build();
     }
 
     /**
      * Loads a landscape at given world coordinates.
+     * <p>
+     * The landscape is not referenced, so it can be closed once it's idle.
      * @param x x coordinate
      * @param z z coordinate
      * @return landscape for give coordinates
      */
     public Landscape get(final int x, final int z) throws ExecutionException {
-        final int chunkX = ChunkUtils.getChunkCoordinate(x);
-        final int chunkZ = ChunkUtils.getChunkCoordinate(z);
-        return landscapes.get(regionIndex(chunkX, chunkZ),
-                () -> Landscape.of(regionFolder, chunkX >> 4, chunkZ >> 4, height, handler)
-        );
+        return load(ChunkUtils.getChunkCoordinate(x), ChunkUtils.getChunkCoordinate(z), false);
+    }
+
+    /**
+     * Loads a landscape of the region containing chunk at given coordinates
+     * and references it, so it stays open until it's released.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @return landscape of the chunk
+     * @see #release(int, int)
+     */
+    public Landscape acquire(final int chunkX, final int chunkZ) throws ExecutionException {
+        return load(chunkX, chunkZ, true);
+    }
+
+    /**
+     * Releases a reference to the landscape of the region containing chunk at
+     * given coordinates, landscapes without references are closed once they are idle.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @see #acquire(int, int)
+     */
+    public void release(final int chunkX, final int chunkZ) {
+        synchronized (regions) {
+            final Region region = regions.get(regionIndex(chunkX, chunkZ));
+            if (region == null || region.references == 0) return;
+            if (--region.references == 0) region.idleSince = System.nanoTime();
+        }
     }
 
     /**
@@ -97,24 +136,300 @@ public class LandscapeHelper {
     }
 
     /**
-     * Flushes all landscapes of this helper.
+     * Opens regions within given distance from a chunk in the background,
+     * regions that are already open are skipped.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @param distance distance in chunks
+     */
+    public void prefetch(final int chunkX, final int chunkZ, final int distance) {
+        for (int regionX = (chunkX - distance) >> 4; regionX <= (chunkX + distance) >> 4; regionX++) {
+            for (int regionZ = (chunkZ - distance) >> 4; regionZ <= (chunkZ + distance) >> 4; regionZ++) {
+                final int x = regionX, z = regionZ;
+                final long index = regionIndex(x << 4, z << 4);
+                synchronized (regions) {
+                    if (regions.containsKey(index)) continue;
+                }
+                if (!prefetching.add(index)) continue;
+                IO_EXECUTOR.execute(() -> {
+                    try {
+                        synchronized (regions) {
+                            // never waits for a closing region on the I/O executor
+                            if (regions.containsKey(index)) return;
+                        }
+                        load(x << 4, z << 4, false);
+                    } catch (Exception exception) {
+                        source.getServerExceptionHandler().handle(exception);
+                    } finally {
+                        prefetching.remove(index);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Marks a segment of a chunk as changed, so it is saved by the auto save,
+     * segments of landscapes that have been closed are ignored.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @param segment changed segment
+     */
+    public void markDirty(final int chunkX, final int chunkZ, final Segment segment) {
+        synchronized (regions) {
+            final Region region = regions.get(regionIndex(chunkX, chunkZ));
+            if (region == null || region.closing || !region.isOpen()) return;
+            synchronized (dirty) {
+                dirty.computeIfAbsent(region, key -> new DirtyRegion(currentTick, Collections.newSetFromMap(new IdentityHashMap<>())))
+                        .segments().add(segment);
+            }
+        }
+    }
+
+    /**
+     * Flushes and closes landscapes that have not been referenced nor accessed
+     * for {@link #IDLE_DELAY} in the background.
+     * <p>
+     * Closing regions stay in the helper until they are closed, so the same
+     * region file is opened again only after the previous landscape has been closed.
+     */
+    public void closeIdle() {
+        final long now = System.nanoTime();
+        synchronized (regions) {
+            for (final Region region : regions.values()) {
+                if (region.closing || region.references > 0 || !region.isOpen() || now - region.idleSince < IDLE_DELAY) continue;
+                region.closing = true;
+                synchronized (dirty) {
+                    dirty.remove(region);
+                }
+                schedule(region, landscape -> {
+                    landscape.flush();
+                    landscape.close();
+                }).thenRun(() -> {
+                    synchronized (regions) {
+                        regions.remove(region.index, region);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Flushes changed landscapes in the background.
+     * <p>
+     * Landscapes are flushed in the order they have been changed in, once they have been
+     * changed for at least the auto save interval, so repeated changes of the same region
+     * are written to the disk together. Each tick at most the throughput budget
+     * is written, larger regions borrow from the budget of the following ticks.
+     * @param tick number of the current tick
+     * @param interval auto save interval in ticks
+     * @param bytesPerTick number of bytes that can be written each tick, 0 or less for no limit
+     * @param tps ticks per second of the server, limits the budget borrowed ahead to a second
+     */
+    public void autoSave(final long tick, final int interval, final long bytesPerTick, final int tps) {
+        currentTick = tick;
+        synchronized (regions) {
+            synchronized (dirty) {
+                if (bytesPerTick > 0)
+                    budget = Math.min(budget + bytesPerTick, bytesPerTick * tps);
+                final Iterator<Map.Entry<Region, DirtyRegion>> iterator = dirty.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    final Map.Entry<Region, DirtyRegion> entry = iterator.next();
+                    if (tick - entry.getValue().since() < interval) break;
+                    if (bytesPerTick > 0) {
+                        if (budget <= 0) break;
+                        budget -= (long) entry.getValue().segments().size() * SEGMENT_SIZE_ESTIMATE;
+                    }
+                    iterator.remove();
+                    schedule(entry.getKey(), Landscape::flush);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes all changed landscapes of this helper and waits until they are flushed.
      */
     public void flush() {
-        landscapes.asMap().values().forEach(Landscape::flush);
+        flushAsync().join();
+    }
+
+    /**
+     * Flushes all changed landscapes of this helper on the I/O executor.
+     * @return future completed once all changed landscapes are flushed
+     */
+    public CompletableFuture<Void> flushAsync() {
+        final List<CompletableFuture<Void>> flushed = new ArrayList<>();
+        synchronized (regions) {
+            synchronized (dirty) {
+                for (final Region region : dirty.keySet())
+                    flushed.add(schedule(region, Landscape::flush));
+                dirty.clear();
+            }
+        }
+        return CompletableFuture.allOf(flushed.toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Closes all landscapes of this helper and waits until they are closed.
+     */
+    public void close() {
+        final List<CompletableFuture<Void>> closed = new ArrayList<>();
+        synchronized (regions) {
+            synchronized (dirty) {
+                dirty.clear();
+            }
+            for (final Region region : regions.values()) {
+                if (region.closing) {
+                    closed.add(region.io);
+                    continue;
+                }
+                if (!region.isOpen()) continue;
+                region.closing = true;
+                closed.add(schedule(region, landscape -> {
+                    landscape.flush();
+                    landscape.close();
+                }));
+            }
+            regions.clear();
+        }
+        CompletableFuture.allOf(closed.toArray(CompletableFuture[]::new)).join();
     }
 
     /**
-     * Closes all landscapes of this helper.
+     * Returns landscape of the region containing chunk at given coordinates,
+     * opening it if it's not open yet.
+     * <p>
+     * If the region is being closed, waits until it's closed and opens it again.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @param reference whether the landscape should be referenced
+     * @return landscape of the chunk
      */
-    public void close() throws IOException {
-        for (final Landscape landscape : landscapes.asMap().values()) {
-            landscape.flush();
-            landscape.close();
+    private Landscape load(final int chunkX, final int chunkZ, final boolean reference) throws ExecutionException {
+        final long index = regionIndex(chunkX, chunkZ);
+        Region region;
+        boolean created;
+        while (true) {
+            final CompletableFuture<Void> closing;
+            synchronized (regions) {
+                final Region existing = regions.get(index);
+                if (existing == null || !existing.closing || existing.io.isDone()) {
+                    created = existing == null || existing.closing;
+                    region = created ? new Region(index) : existing;
+                    if (created) regions.put(index, region);
+                    if (reference) region.references++;
+                    region.idleSince = System.nanoTime();
+                    break;
+                }
+                closing = existing.io;
+            }
+            closing.join();
         }
-        landscapes.asMap().clear();
+        if (created) {
+            try {
+                region.landscape.complete(open(chunkX >> 4, chunkZ >> 4));
+            } catch (Throwable throwable) {
+                synchronized (regions) {
+                    regions.remove(index, region);
+                }
+                region.landscape.completeExceptionally(throwable);
+            }
+        }
+        try {
+            return region.landscape.join();
+        } catch (CompletionException exception) {
+            throw new ExecutionException(exception.getCause());
+        }
+    }
+
+    /**
+     * Schedules an I/O task for the landscape of a region on the I/O executor, the tasks
+     * of a single region run one after another in the order they have been scheduled in.
+     * <p>
+     * Has to be called while holding the lock of the regions.
+     * @param region region of the landscape
+     * @param task task to run
+     * @return future completed once the task has finished
+     */
+    private CompletableFuture<Void> schedule(final Region region, final LandscapeTask task) {
+        final Landscape landscape = region.landscape.join();
+        region.io = region.io.thenRunAsync(() -> {
+            try {
+                task.run(landscape);
+            } catch (Exception exception) {
+                source.getServerExceptionHandler().handle(exception);
+            }
+        }, IO_EXECUTOR);
+        return region.io;
     }
 
-    private long regionIndex(final int chunkX, final int chunkZ) {
+    /**
+     * Opens landscape of a region.
+     * @param regionX x coordinate of the region
+     * @param regionZ z coordinate of the region
+     * @return opened landscape
+     */
+    private Landscape open(final int regionX, final int regionZ) throws IOException {
+        return Landscape.of(regionFolder, regionX, regionZ, height, handler);
+    }
+
+    /**
+     * Changed segments of a landscape waiting for the auto save.
+     * @param since tick the landscape has been changed first in
+     * @param segments changed segments
+     */
+    private record DirtyRegion(long since, Set<Segment> segments) {
+    }
+
+    /**
+     * I/O task of a landscape.
+     */
+    @FunctionalInterface
+    private interface LandscapeTask {
+
+        /**
+         * Runs the task.
+         * @param landscape landscape of the region
+         */
+        void run(Landscape landscape) throws Exception;
+
+    }
+
+    /**
+     * Landscape of a region together with the number of chunks referencing it
+     * and the I/O tasks of the landscape.
+     */
+    private static final class Region {
+
+        private final long index;
+        private final CompletableFuture<Landscape> landscape = new CompletableFuture<>();
+        private CompletableFuture<Void> io = CompletableFuture.completedFuture(null);
+        private int references;
+        private long idleSince;
+        private boolean closing;
+
+        Region(final long index) {
+            this.index = index;
+        }
+
+        /**
+         * @return whether the landscape has been opened successfully
+         */
+        boolean isOpen() {
+            return landscape.isDone() && !landscape.isCompletedExceptionally();
+        }
+
+    }
+
+    /**
+     * Returns index of the region containing chunk at given coordinates, regions
+     * are areas of 16x16 chunks each stored in a single landscape file.
+     * @param chunkX x coordinate of the chunk
+     * @param chunkZ z coordinate of the chunk
+     * @return index of the region
+     */
+    public static long regionIndex(final int chunkX, final int chunkZ) {
         return ((long) (chunkX >> 4) << 32) | ((chunkZ >> 4) & 0xFFFFFFFFL);
     }
 
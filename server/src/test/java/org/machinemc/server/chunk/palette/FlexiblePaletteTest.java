@@ -0,0 +1,181 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.chunk.palette;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests compaction of the flexible palette across bits per entry shrinks.
+ */
+class FlexiblePaletteTest {
+
+    private static final int DIMENSION = 16;
+    private static final int SIZE = DIMENSION * DIMENSION * DIMENSION;
+    private static final int DEFAULT_BITS = 4;
+    private static final int MAX_BITS = 8;
+
+    @ParameterizedTest
+    @CsvSource({
+            "40, 20", // palette 6 -> 5 bits
+            "200, 3", // palette 8 -> default bits
+            "100, 16", // palette 7 -> 5 bits, 0 is kept as the first entry
+            "300, 5", // direct palette -> palette
+            "300, 200", // direct palette -> 8 bits palette
+            "300, 16" // direct palette -> 5 bits palette, with the empty value the palette has 17 entries
+    })
+    void compactShrinksAndKeepsEntries(final int initialValues, final int remainingValues) {
+        final AdaptivePalette adaptive = (AdaptivePalette) AdaptivePalette.newPalette(DIMENSION, MAX_BITS, DEFAULT_BITS);
+        final FlexiblePalette palette = (FlexiblePalette) adaptive.flexiblePalette();
+        final int[] expected = new int[SIZE];
+        forEach((x, y, z, index) -> {
+            expected[index] = 1 + index % initialValues;
+            palette.set(x, y, z, expected[index]);
+        });
+        final int bitsBefore = palette.bitsPerEntry();
+
+        final Random random = new Random(initialValues * 31L + remainingValues);
+        forEach((x, y, z, index) -> {
+            expected[index] = 1 + random.nextInt(remainingValues);
+            palette.set(x, y, z, expected[index]);
+        });
+        final int distinct = distinct(expected);
+
+        assertEquals(distinct, palette.compact());
+        assertTrue(palette.bitsPerEntry() <= bitsBefore);
+        assertEquals(expectedBits(distinct), palette.bitsPerEntry());
+        assertEntries(palette, expected);
+        assertEquals(SIZE, palette.count());
+    }
+
+    @Test
+    void compactKeepsEmptyEntries() {
+        final AdaptivePalette adaptive = (AdaptivePalette) AdaptivePalette.newPalette(DIMENSION, MAX_BITS, DEFAULT_BITS);
+        final FlexiblePalette palette = (FlexiblePalette) adaptive.flexiblePalette();
+        final int[] expected = new int[SIZE];
+        forEach((x, y, z, index) -> {
+            expected[index] = 1 + index % 64;
+            palette.set(x, y, z, expected[index]);
+        });
+        forEach((x, y, z, index) -> {
+            expected[index] = index % 3 == 0 ? 0 : 1 + index % 5;
+            palette.set(x, y, z, expected[index]);
+        });
+
+        palette.compact();
+
+        assertEquals(DEFAULT_BITS, palette.bitsPerEntry());
+        assertEntries(palette, expected);
+        assertEquals(SIZE - (SIZE + 2) / 3, palette.count());
+    }
+
+    @Test
+    void setAfterCompactUsesReindexedPalette() {
+        final AdaptivePalette adaptive = (AdaptivePalette) AdaptivePalette.newPalette(DIMENSION, MAX_BITS, DEFAULT_BITS);
+        final FlexiblePalette palette = (FlexiblePalette) adaptive.flexiblePalette();
+        final int[] expected = new int[SIZE];
+        forEach((x, y, z, index) -> {
+            expected[index] = 1 + index % 100;
+            palette.set(x, y, z, expected[index]);
+        });
+        forEach((x, y, z, index) -> {
+            expected[index] = 50 + index % 4;
+            palette.set(x, y, z, expected[index]);
+        });
+        palette.compact();
+
+        // values removed by the compaction and values that are still present
+        forEach((x, y, z, index) -> {
+            if (index % 7 != 0) return;
+            expected[index] = index % 2 == 0 ? 7 : 51;
+            palette.set(x, y, z, expected[index]);
+        });
+
+        assertEntries(palette, expected);
+        assertEquals(distinct(expected), palette.compact());
+        assertEntries(palette, expected);
+    }
+
+    @Test
+    void optimizedPaletteOfSingleValueIsFilled() {
+        final AdaptivePalette adaptive = (AdaptivePalette) AdaptivePalette.newPalette(DIMENSION, MAX_BITS, DEFAULT_BITS);
+        forEach((x, y, z, index) -> adaptive.set(x, y, z, 1 + index % 20));
+        forEach((x, y, z, index) -> adaptive.set(x, y, z, 9));
+
+        assertInstanceOf(FilledPalette.class, adaptive.optimizedPalette());
+        assertEquals(9, adaptive.optimizedPalette().get(3, 4, 5));
+    }
+
+    /**
+     * Asserts that all entries of the palette match the expected values,
+     * both through the direct access and the bulk access.
+     * @param palette palette to check
+     * @param expected expected values by section index
+     */
+    private static void assertEntries(final FlexiblePalette palette, final int[] expected) {
+        forEach((x, y, z, index) -> assertEquals(expected[index], palette.get(x, y, z), "Entry at " + x + ", " + y + ", " + z));
+        palette.getAll((x, y, z, value) -> assertEquals(expected[index(x, y, z)], value, "Entry at " + x + ", " + y + ", " + z));
+    }
+
+    /**
+     * @param values values
+     * @return number of distinct values
+     */
+    private static int distinct(final int[] values) {
+        return (int) Arrays.stream(values).distinct().count();
+    }
+
+    /**
+     * @param distinct number of distinct non-empty values
+     * @return bits per entry of the palette with the empty value and the distinct values
+     */
+    private static int expectedBits(final int distinct) {
+        return Math.max(DEFAULT_BITS, Integer.SIZE - Integer.numberOfLeadingZeros(distinct));
+    }
+
+    private static int index(final int x, final int y, final int z) {
+        return (y * DIMENSION + z) * DIMENSION + x;
+    }
+
+    /**
+     * Calls the consumer for every position of the palette.
+     * @param consumer consumer
+     */
+    private static void forEach(final PositionConsumer consumer) {
+        for (int y = 0; y < DIMENSION; y++) {
+            for (int z = 0; z < DIMENSION; z++) {
+                for (int x = 0; x < DIMENSION; x++)
+                    consumer.accept(x, y, z, index(x, y, z));
+            }
+        }
+    }
+
+    /**
+     * Consumer of a position in the palette.
+     */
+    @FunctionalInterface
+    private interface PositionConsumer {
+
+        void accept(int x, int y, int z, int index);
+
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.machinemc.api.entities.Entity;
+import org.machinemc.api.entities.EntityType;
+import org.machinemc.api.world.EntityPosition;
+import org.machinemc.api.world.Location;
+import org.machinemc.api.world.World;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the queries of the entity index with brute force searches.
+ */
+class EntityIndexTest {
+
+    private static final int ENTITIES = 600;
+
+    private final Random random = new Random(42);
+    private final World world = Stubs.stub(World.class);
+    private final Map<Entity, AtomicReference<Location>> locations = new IdentityHashMap<>();
+    private EntityIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new EntityIndex(world);
+        for (int i = 0; i < ENTITIES; i++)
+            index.add(entity(randomCoordinate(100), randomCoordinate(100), randomCoordinate(100)));
+    }
+
+    @Test
+    void nearestMatchesBruteForce() {
+        for (int i = 0; i < 100; i++) {
+            final EntityPosition center = EntityPosition.of(randomCoordinate(150), randomCoordinate(150), randomCoordinate(150));
+            for (final int count : new int[]{1, 7, 60, ENTITIES + 10})
+                assertEquals(bruteForceNearest(center, count), index.nearest(center, count), "Nearest to " + center);
+        }
+    }
+
+    @Test
+    void nearestFindsDistantEntities() {
+        index = new EntityIndex(world);
+        final Entity far = entity(10_000, 64, -10_000);
+        final Entity farther = entity(-20_000, -64, 20_000);
+        index.add(far);
+        index.add(farther);
+
+        assertEquals(List.of(far, farther), index.nearest(EntityPosition.of(0, 0, 0), 5));
+        assertEquals(List.of(far), index.nearest(EntityPosition.of(0, 0, 0), 1));
+    }
+
+    @Test
+    void nearestOfEmptyIndex() {
+        index = new EntityIndex(world);
+        assertEquals(List.of(), index.nearest(EntityPosition.of(0, 0, 0), 3));
+        assertEquals(List.of(), new EntityIndex(world).nearest(EntityPosition.of(1, 2, 3), 0));
+    }
+
+    @Test
+    void collectInBoxMatchesBruteForce() {
+        for (int i = 0; i < 200; i++) {
+            // small boxes visit the sections directly, large ones iterate all sections
+            final double size = i % 2 == 0 ? random.nextDouble() * 20 : random.nextDouble() * 300;
+            final double minX = randomCoordinate(150), minY = randomCoordinate(150), minZ = randomCoordinate(150);
+            assertBox(minX, minY, minZ, minX + size, minY + random.nextDouble() * size, minZ + size);
+        }
+        assertBox(-16, -16, -16, -0.0001, -0.0001, -0.0001);
+        assertBox(0, 0, 0, 15.9999, 15.9999, 15.9999);
+    }
+
+    @Test
+    void queriesFollowMovedAndRemovedEntities() {
+        final List<Entity> entities = new ArrayList<>(locations.keySet());
+        for (int i = 0; i < entities.size(); i++) {
+            final Entity entity = entities.get(i);
+            if (i % 3 == 0) {
+                assertTrue(index.remove(entity));
+                assertFalse(index.remove(entity));
+                locations.remove(entity);
+                continue;
+            }
+            locations.get(entity).set(Location.of(randomCoordinate(100), randomCoordinate(100), randomCoordinate(100), world));
+            index.move(entity);
+        }
+
+        assertEquals(locations.size(), index.size());
+        assertBox(-200, -200, -200, 200, 200, 200);
+        assertBox(-30, -30, -30, 30, 30, 30);
+        final EntityPosition center = EntityPosition.of(5, -5, 5);
+        assertEquals(bruteForceNearest(center, 25), index.nearest(center, 25));
+    }
+
+    /**
+     * Asserts that the entities found in a box are the same as the ones found by a brute force search.
+     * @param minX minimal x coordinate of the box
+     * @param minY minimal y coordinate of the box
+     * @param minZ minimal z coordinate of the box
+     * @param maxX maximal x coordinate of the box
+     * @param maxY maximal y coordinate of the box
+     * @param maxZ maximal z coordinate of the box
+     */
+    private void assertBox(final double minX, final double minY, final double minZ,
+                           final double maxX, final double maxY, final double maxZ) {
+        final Set<Entity> expected = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final Map.Entry<Entity, AtomicReference<Location>> entry : locations.entrySet()) {
+            final Location location = entry.getValue().get();
+            if (location.getX() >= minX && location.getX() <= maxX
+                    && location.getY() >= minY && location.getY() <= maxY
+                    && location.getZ() >= minZ && location.getZ() <= maxZ)
+                expected.add(entry.getKey());
+        }
+        final List<Entity> found = new ArrayList<>();
+        index.collectInBox(minX, minY, minZ, maxX, maxY, maxZ, found);
+        final Set<Entity> actual = Collections.newSetFromMap(new IdentityHashMap<>());
+        actual.addAll(found);
+        assertEquals(found.size(), actual.size(), "Entities are collected only once");
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Returns the nearest entities to a position by sorting all entities by their distance.
+     * @param center center position
+     * @param count maximal number of entities
+     * @return nearest entities
+     */
+    private List<Entity> bruteForceNearest(final EntityPosition center, final int count) {
+        return locations.keySet().stream()
+                .sorted(Comparator.comparingDouble(entity -> distanceSquared(center, locations.get(entity).get())))
+                .limit(count)
+                .toList();
+    }
+
+    /**
+     * Creates a stub entity at given position.
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return entity
+     */
+    private Entity entity(final double x, final double y, final double z) {
+        final AtomicReference<Location> location = new AtomicReference<>(Location.of(x, y, z, world));
+        final Entity entity = Stubs.stub(Entity.class, (method, arguments) -> switch (method) {
+            case "getLocation" -> location.get().clone();
+            case "getEntityType" -> EntityType.PLAYER;
+            case "getWorld" -> world;
+            default -> null;
+        });
+        locations.put(entity, location);
+        return entity;
+    }
+
+    /**
+     * @param bound bound of the coordinate
+     * @return random coordinate between the negative and positive bound
+     */
+    private double randomCoordinate(final double bound) {
+        return (random.nextDouble() * 2 - 1) * bound;
+    }
+
+    private static double distanceSquared(final EntityPosition a, final EntityPosition b) {
+        final double x = a.getX() - b.getX(), y = a.getY() - b.getY(), z = a.getZ() - b.getZ();
+        return x * x + y * y + z * z;
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.machinemc.api.Server;
+import org.machinemc.api.entities.EntityManager;
+import org.machinemc.api.entities.EntityType;
+import org.machinemc.api.entities.Player;
+import org.machinemc.api.network.PlayerConnection;
+import org.machinemc.api.network.ServerConnection;
+import org.machinemc.api.network.packets.Packet;
+import org.machinemc.api.world.EntityPosition;
+import org.machinemc.api.world.World;
+import org.machinemc.server.network.packets.out.play.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the selection of the movement packets sent to the viewers of an entity.
+ */
+class ServerEntityMovementTest {
+
+    private final List<Packet> sent = new ArrayList<>();
+    private ServerEntity entity;
+
+    @BeforeEach
+    void setUp() {
+        final World world = Stubs.stub(World.class);
+        final ServerConnection connection = Stubs.stub(ServerConnection.class, (method, arguments) -> {
+            if (method.equals("broadcastPacket")) sent.add((Packet) arguments[0]);
+            return null;
+        });
+        final EntityManager entityManager = Stubs.stub(EntityManager.class);
+        final Server server = Stubs.stub(Server.class, (method, arguments) -> switch (method) {
+            case "getDefaultWorld" -> world;
+            case "getConnection" -> connection;
+            case "getEntityManager" -> entityManager;
+            default -> null;
+        });
+        entity = new ServerEntity(server, EntityType.PLAYER, UUID.randomUUID()) { };
+        entity.handleMovement(EntityPosition.of(0.5, 64, 0.5, 0, 0), true);
+        entity.init();
+
+        // the viewer is not spawned for a closed connection, packets are only recorded by the server connection
+        final PlayerConnection playerConnection = Stubs.stub(PlayerConnection.class);
+        entity.addViewer(Stubs.stub(Player.class, (method, arguments) -> method.equals("getConnection") ? playerConnection : null));
+        sent.clear();
+    }
+
+    @Test
+    void unchangedEntitySendsNothing() {
+        entity.broadcastMovement(1);
+        entity.handleMovement(EntityPosition.of(0.5, 64, 0.5, 0, 0), true);
+        entity.broadcastMovement(2);
+
+        assertTrue(sent.isEmpty(), sent::toString);
+    }
+
+    @Test
+    void smallMoveSendsRelativePosition() {
+        entity.handleMovement(EntityPosition.of(0.75, 64.1, 0.4, 0, 0), false);
+        entity.broadcastMovement(1);
+
+        final PacketPlayOutEntityPosition packet = single(PacketPlayOutEntityPosition.class);
+        assertEquals(entity.getEntityID(), packet.getEntityID());
+        assertEquals(delta(0.5, 0.75), packet.getDeltaX());
+        assertEquals(delta(64, 64.1), packet.getDeltaY());
+        assertEquals(delta(0.5, 0.4), packet.getDeltaZ());
+        assertFalse(packet.isOnGround());
+    }
+
+    @Test
+    void movesDuringTickAreCoalesced() {
+        entity.handleMovement(EntityPosition.of(1, 64, 1, 0, 0), true);
+        entity.handleMovement(EntityPosition.of(2, 65, 1.5, 0, 0), true);
+        entity.broadcastMovement(1);
+
+        final PacketPlayOutEntityPosition packet = single(PacketPlayOutEntityPosition.class);
+        assertEquals(delta(0.5, 2), packet.getDeltaX());
+        assertEquals(delta(64, 65), packet.getDeltaY());
+        assertEquals(delta(0.5, 1.5), packet.getDeltaZ());
+    }
+
+    @Test
+    void onGroundChangeSendsRelativePosition() {
+        entity.handleMovement(EntityPosition.of(0.5, 64, 0.5, 0, 0), false);
+        entity.broadcastMovement(1);
+
+        final PacketPlayOutEntityPosition packet = single(PacketPlayOutEntityPosition.class);
+        assertEquals(0, packet.getDeltaX());
+        assertEquals(0, packet.getDeltaY());
+        assertEquals(0, packet.getDeltaZ());
+        assertFalse(packet.isOnGround());
+    }
+
+    @Test
+    void rotationSendsRotationAndHeadRotation() {
+        entity.handleMovement(EntityPosition.of(0.5, 64, 0.5, 90, 10), true);
+        entity.broadcastMovement(1);
+
+        assertEquals(2, sent.size(), sent::toString);
+        final PacketPlayOutEntityRotation rotation = assertInstanceOf(PacketPlayOutEntityRotation.class, sent.get(0));
+        assertEquals(90, rotation.getYaw());
+        assertEquals(10, rotation.getPitch());
+        assertEquals(90, assertInstanceOf(PacketPlayOutHeadRotation.class, sent.get(1)).getAngle());
+    }
+
+    @Test
+    void pitchChangeSendsOnlyRotation() {
+        entity.handleMovement(EntityPosition.of(0.5, 64, 0.5, 0, 45), true);
+        entity.broadcastMovement(1);
+
+        assertEquals(45, single(PacketPlayOutEntityRotation.class).getPitch());
+    }
+
+    @Test
+    void moveAndRotationSendsPositionAndRotation() {
+        entity.handleMovement(EntityPosition.of(3, 62, 0.5, 180, 0), true);
+        entity.broadcastMovement(1);
+
+        assertEquals(2, sent.size(), sent::toString);
+        final PacketPlayOutEntityPositionAndRotation packet = assertInstanceOf(PacketPlayOutEntityPositionAndRotation.class, sent.get(0));
+        assertEquals(delta(0.5, 3), packet.getDeltaX());
+        assertEquals(delta(64, 62), packet.getDeltaY());
+        assertEquals(0, packet.getDeltaZ());
+        assertEquals(180, packet.getYaw());
+        assertInstanceOf(PacketPlayOutHeadRotation.class, sent.get(1));
+    }
+
+    @Test
+    void largeMoveSendsTeleport() {
+        // more than 8 blocks do not fit into the relative move
+        entity.handleMovement(EntityPosition.of(15.5, 64, 0.5, 0, 0), true);
+        entity.broadcastMovement(1);
+
+        final PacketPlayOutTeleportEntity packet = single(PacketPlayOutTeleportEntity.class);
+        assertEquals(15.5, packet.getPosition().getX());
+        assertEquals(64, packet.getPosition().getY());
+
+        sent.clear();
+        entity.handleMovement(EntityPosition.of(15.5, 64, 8.4, 0, 0), true);
+        entity.broadcastMovement(2);
+        assertEquals(delta(0.5, 8.4), single(PacketPlayOutEntityPosition.class).getDeltaZ());
+
+        sent.clear();
+        entity.handleMovement(EntityPosition.of(15.5, -36, 8.4, 0, 0), true);
+        entity.broadcastMovement(3);
+        assertEquals(-36, single(PacketPlayOutTeleportEntity.class).getPosition().getY());
+    }
+
+    @Test
+    void relativeMovesAreResynchronized() {
+        final long start = 10;
+        entity.handleMovement(EntityPosition.of(1, 64, 1, 0, 0), true);
+        entity.broadcastMovement(start);
+        single(PacketPlayOutEntityPosition.class);
+
+        sent.clear();
+        for (long tick = start + 1; tick < start + ServerEntity.RESYNC_INTERVAL; tick++)
+            entity.broadcastMovement(tick);
+        assertTrue(sent.isEmpty(), sent::toString);
+
+        // the absolute position is sent even though the entity did not move
+        entity.broadcastMovement(start + ServerEntity.RESYNC_INTERVAL);
+        final PacketPlayOutTeleportEntity packet = single(PacketPlayOutTeleportEntity.class);
+        assertEquals(1, packet.getPosition().getX());
+        assertEquals(64, packet.getPosition().getY());
+        assertEquals(1, packet.getPosition().getZ());
+
+        // once synchronized, entity without relative moves is not synchronized again
+        sent.clear();
+        for (long tick = start + ServerEntity.RESYNC_INTERVAL + 1; tick <= start + 3L * ServerEntity.RESYNC_INTERVAL; tick++)
+            entity.broadcastMovement(tick);
+        assertTrue(sent.isEmpty(), sent::toString);
+    }
+
+    @Test
+    void resyncIntervalStartsWithFirstRelativeMove() {
+        entity.handleMovement(EntityPosition.of(1, 64, 1, 0, 0), true);
+        entity.broadcastMovement(1000);
+        single(PacketPlayOutEntityPosition.class);
+
+        sent.clear();
+        entity.handleMovement(EntityPosition.of(1.5, 64, 1, 0, 0), true);
+        entity.broadcastMovement(1001);
+        single(PacketPlayOutEntityPosition.class);
+
+        sent.clear();
+        entity.broadcastMovement(1000 + ServerEntity.RESYNC_INTERVAL);
+        single(PacketPlayOutTeleportEntity.class);
+    }
+
+    @Test
+    void relativeMovesDoNotDrift() {
+        // each step is smaller than the precision of the relative moves, the entity is not resynchronized in between
+        final double step = 0.0001;
+        double x = 0.5;
+        long total = 0;
+        for (int tick = 1; tick < ServerEntity.RESYNC_INTERVAL; tick++) {
+            x += step;
+            entity.handleMovement(EntityPosition.of(x, 64, 0.5, 0, 0), true);
+            entity.broadcastMovement(tick);
+            for (final Packet packet : sent)
+                total += assertInstanceOf(PacketPlayOutEntityPosition.class, packet).getDeltaX();
+            sent.clear();
+        }
+
+        assertEquals(delta(0.5, x), total);
+    }
+
+    /**
+     * Asserts that a single packet of given type has been sent.
+     * @param type expected type of the packet
+     * @return sent packet
+     * @param <T> packet type
+     */
+    private <T extends Packet> T single(final Class<T> type) {
+        assertEquals(1, sent.size(), sent::toString);
+        return assertInstanceOf(type, sent.get(0));
+    }
+
+    /**
+     * @param from previous coordinate
+     * @param to new coordinate
+     * @return difference of the coordinates in the precision of the relative moves
+     */
+    private static long delta(final double from, final double to) {
+        return Math.round(to * 4096) - Math.round(from * 4096);
+    }
+
+}
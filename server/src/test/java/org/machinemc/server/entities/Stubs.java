@@ -0,0 +1,85 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.entities;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+
+/**
+ * Creates stubs of the server interfaces for the tests.
+ */
+final class Stubs {
+
+    private Stubs() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Creates a stub of an interface, methods without an answer return the default
+     * value of their return type. Stubs are equal only to themselves.
+     * @param type interface to stub
+     * @param answer answers of the stubbed methods
+     * @return stub
+     * @param <T> stubbed interface
+     */
+    static <T> T stub(final Class<T> type, final Answer answer) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            final Object[] arguments = args != null ? args : new Object[0];
+            switch (method.getName()) {
+                case "equals":
+                    if (arguments.length == 1) return proxy == arguments[0];
+                    break;
+                case "hashCode":
+                    if (arguments.length == 0) return System.identityHashCode(proxy);
+                    break;
+                case "toString":
+                    if (arguments.length == 0) return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                    break;
+                default:
+                    break;
+            }
+            final Object result = answer.answer(method.getName(), arguments);
+            final Class<?> returnType = method.getReturnType();
+            if (result != null || !returnType.isPrimitive() || returnType == void.class) return result;
+            return Array.get(Array.newInstance(returnType, 1), 0);
+        }));
+    }
+
+    /**
+     * Creates a stub of an interface with all methods returning the default values.
+     * @param type interface to stub
+     * @return stub
+     * @param <T> stubbed interface
+     */
+    static <T> T stub(final Class<T> type) {
+        return stub(type, (method, arguments) -> null);
+    }
+
+    /**
+     * Answers the calls of a stub.
+     */
+    @FunctionalInterface
+    interface Answer {
+
+        /**
+         * @param method name of the called method
+         * @param arguments arguments of the call
+         * @return result of the call, null for the default value
+         */
+        Object answer(String method, Object[] arguments) throws Throwable;
+
+    }
+
+}
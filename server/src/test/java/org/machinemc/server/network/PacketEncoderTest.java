@@ -0,0 +1,123 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.machinemc.api.utils.FriendlyByteBuf;
+import org.machinemc.server.network.packets.ServerPacket;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the back-patching of the packet length padded to 3 bytes.
+ */
+class PacketEncoderTest {
+
+    private static final int ID = 0x2B;
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 127, 128, 255, 16383, 16384, 100_000, PacketEncoder.MAX_LENGTH})
+    void paddedVarIntIsReadAsVarInt(final int value) {
+        final ByteBuf buf = Unpooled.buffer();
+        buf.writeMedium(PacketEncoder.paddedVarInt(value));
+
+        assertEquals(value, new FriendlyByteBuf(buf).readVarInt());
+        assertEquals(PacketEncoder.LENGTH_BYTES, buf.readerIndex());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 127, 128, 129, 16383, 16384, 16385, PacketEncoder.MAX_LENGTH})
+    void frameLengthIsBackPatched(final int length) {
+        // the packet id takes a single byte
+        final byte[] payload = new byte[length - 1];
+        new Random(length).nextBytes(payload);
+        final ByteBuf out = Unpooled.buffer();
+        out.writeBytes(new byte[]{1, 2, 3}); // frames do not have to start at the beginning of the buffer
+        out.readerIndex(3);
+
+        PacketEncoder.writeFrame(new RawPacket(payload), out);
+
+        final FriendlyByteBuf buf = new FriendlyByteBuf(out);
+        assertEquals(length, buf.readVarInt());
+        assertEquals(3 + PacketEncoder.LENGTH_BYTES, out.readerIndex());
+        assertEquals(length, out.readableBytes());
+        assertEquals(ID, buf.readVarInt());
+        final byte[] read = new byte[payload.length];
+        out.readBytes(read);
+        assertArrayEquals(payload, read);
+        assertEquals(1, out.getByte(0));
+    }
+
+    @Test
+    void consecutiveFramesAreSeparated() {
+        final ByteBuf out = Unpooled.buffer();
+        PacketEncoder.writeFrame(new RawPacket(new byte[200]), out);
+        PacketEncoder.writeFrame(new RawPacket(new byte[5]), out);
+
+        final FriendlyByteBuf buf = new FriendlyByteBuf(out);
+        assertEquals(201, buf.readVarInt());
+        out.skipBytes(201);
+        assertEquals(6, buf.readVarInt());
+        out.skipBytes(6);
+        assertFalse(out.isReadable());
+    }
+
+    @Test
+    void tooLargePacketIsRejected() {
+        final ByteBuf out = Unpooled.buffer();
+        final RawPacket packet = new RawPacket(new byte[PacketEncoder.MAX_LENGTH]);
+        assertThrows(IllegalStateException.class, () -> PacketEncoder.writeFrame(packet, out));
+    }
+
+    /**
+     * Packet with raw payload.
+     */
+    private static final class RawPacket extends ServerPacket {
+
+        private final byte[] payload;
+
+        RawPacket(final byte[] payload) {
+            this.payload = payload;
+        }
+
+        @Override
+        public int getID() {
+            return ID;
+        }
+
+        @Override
+        public PacketState getPacketState() {
+            return PacketState.PLAY_OUT;
+        }
+
+        @Override
+        public byte[] serialize() {
+            return payload.clone();
+        }
+
+        @Override
+        public RawPacket clone() {
+            return new RawPacket(payload);
+        }
+
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of Machine.
+ *
+ * Machine is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Machine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with Machine.
+ * If not, see https://www.gnu.org/licenses/.
+ */
+package org.machinemc.server.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the expiration of timeouts on a small timer wheel, so the deadlines
+ * are multiple rotations of the wheel away.
+ */
+class TimerWheelTest {
+
+    private static final int SLOTS = 4;
+
+    private final TimerWheel wheel = new TimerWheel(1, TimeUnit.MILLISECONDS, SLOTS);
+
+    @Test
+    void timeoutWrapsAroundUntilDeadline() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(40);
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch expired = new CountDownLatch(1);
+        final long[] expiredAt = new long[1];
+        wheel.schedule(now -> {
+            calls.incrementAndGet();
+            if (now - deadline < 0) return deadline;
+            expiredAt[0] = now;
+            expired.countDown();
+            return -1;
+        }, deadline);
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertTrue(expiredAt[0] - deadline >= 0, "Timeout expired before its deadline");
+        // 40 ticks on a wheel with 4 slots, the slot of the deadline is visited again each rotation
+        assertTrue(calls.get() > 1, "Timeout has not been visited in earlier rotations");
+    }
+
+    @Test
+    void timeoutsExpireOnceAfterTheirDeadlines() throws InterruptedException {
+        final int count = 200;
+        final Random random = new Random(7);
+        final CountDownLatch expired = new CountDownLatch(count);
+        final Queue<String> failures = new ConcurrentLinkedQueue<>();
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            final long deadline = start + TimeUnit.MICROSECONDS.toNanos(random.nextInt(30_000));
+            final AtomicInteger expirations = new AtomicInteger();
+            wheel.schedule(now -> {
+                if (now - deadline < 0) return deadline;
+                if (expirations.incrementAndGet() != 1) failures.add("Timeout expired more than once");
+                expired.countDown();
+                return -1;
+            }, deadline);
+        }
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS), "Not all timeouts expired");
+        assertTrue(failures.isEmpty(), failures::toString);
+    }
+
+    @Test
+    void pastDeadlineExpiresOnNextTick() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(1);
+        wheel.schedule(now -> {
+            expired.countDown();
+            return -1;
+        }, System.nanoTime() - TimeUnit.SECONDS.toNanos(10));
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void timeoutsAreRescheduled() throws InterruptedException {
+        final CountDownLatch expirations = new CountDownLatch(5);
+        final long period = TimeUnit.MILLISECONDS.toNanos(7);
+        wheel.schedule(now -> {
+            expirations.countDown();
+            return expirations.getCount() > 0 ? now + period : -1;
+        }, System.nanoTime() + period);
+
+        assertTrue(expirations.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failingTimeoutIsPassedToErrorHandler() throws InterruptedException {
+        final CountDownLatch handled = new CountDownLatch(1);
+        final CountDownLatch expired = new CountDownLatch(1);
+        final RuntimeException exception = new RuntimeException("Expected");
+        final Throwable[] caught = new Throwable[1];
+        wheel.setErrorHandler(throwable -> {
+            caught[0] = throwable;
+            handled.countDown();
+        });
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2);
+        wheel.schedule(now -> {
+            throw exception;
+        }, deadline);
+        wheel.schedule(now -> {
+            expired.countDown();
+            return -1;
+        }, deadline);
+
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        assertSame(exception, caught[0]);
+        assertTrue(expired.await(5, TimeUnit.SECONDS), "Other timeouts are not expired after a failure");
+    }
+
+}